@@ -0,0 +1,109 @@
+package org.geneontology.arachne.benchmarks;
+
+import org.geneontology.arachne.TripleBridge;
+import org.geneontology.rules.engine.Triple;
+import org.geneontology.rules.engine.URI;
+import org.openjdk.jmh.annotations.*;
+import org.semanticweb.owlapi.model.*;
+import org.semanticweb.owlapi.model.parameters.Imports;
+import org.semanticweb.owlapi.vocab.OWLRDFVocabulary;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures converting Abox axioms to triples: per axiom, and for the whole Abox into one set as a full
+ * realization does. The baseline allocates a URI per term as the reasoner did before {@link TripleBridge}.
+ * <p>
+ * Run with {@code -prof gc}: {@code gc.alloc.rate.norm} of the per axiom benchmarks is the bytes allocated per axiom;
+ * for the whole Abox benchmarks divide it by the number of Abox axioms, about {@code individuals * (1 + density)}
+ * less the duplicate links drawn by {@link SyntheticOntology}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ConversionBenchmark {
+
+    @Param({"1000"})
+    public int classes;
+
+    @Param({"10000"})
+    public int individuals;
+
+    @Param({"1.0"})
+    public double density;
+
+    private OWLAxiom[] axioms;
+    private TripleBridge bridge;
+    private int next = 0;
+
+    @Setup
+    public void setup() throws OWLOntologyCreationException {
+        OWLOntology ontology = new SyntheticOntology(classes, individuals, density, 42).generate();
+        axioms = ontology.getABoxAxioms(Imports.INCLUDED).toArray(new OWLAxiom[0]);
+        bridge = new TripleBridge();
+        // The reasoner converts an Abox whose terms are already interned from earlier flushes
+        bridge.triples(ontology.getABoxAxioms(Imports.INCLUDED)).forEach(triple -> {
+        });
+    }
+
+    private OWLAxiom nextAxiom() {
+        OWLAxiom axiom = axioms[next];
+        next = next + 1 == axioms.length ? 0 : next + 1;
+        return axiom;
+    }
+
+    @Benchmark
+    public Set<Triple> baselineAxiom() {
+        return baselineTriples(nextAxiom());
+    }
+
+    @Benchmark
+    public Triple bridgeAxiom() {
+        return bridge.triple(nextAxiom());
+    }
+
+    @Benchmark
+    public Set<Triple> baselineAbox() {
+        Set<Triple> triples = new HashSet<>();
+        for (OWLAxiom axiom : axioms) {
+            triples.addAll(baselineTriples(axiom));
+        }
+        return triples;
+    }
+
+    @Benchmark
+    public Set<Triple> bridgeAbox() {
+        Set<Triple> triples = new HashSet<>(axioms.length * 4 / 3 + 1);
+        for (OWLAxiom axiom : axioms) {
+            Triple triple = bridge.triple(axiom);
+            if (triple != null) triples.add(triple);
+        }
+        return triples;
+    }
+
+    /**
+     * The conversion the reasoner used before {@link TripleBridge}, for the named individuals of {@link SyntheticOntology}.
+     */
+    private static Set<Triple> baselineTriples(OWLAxiom axiom) {
+        if (axiom instanceof OWLObjectPropertyAssertionAxiom) {
+            OWLObjectPropertyAssertionAxiom assertion = (OWLObjectPropertyAssertionAxiom) axiom;
+            return Collections.singleton(new Triple(
+                    new URI(assertion.getSubject().asOWLNamedIndividual().getIRI().toString()),
+                    new URI(assertion.getProperty().asOWLObjectProperty().getIRI().toString()),
+                    new URI(assertion.getObject().asOWLNamedIndividual().getIRI().toString())));
+        } else if (axiom instanceof OWLClassAssertionAxiom) {
+            OWLClassAssertionAxiom assertion = (OWLClassAssertionAxiom) axiom;
+            return Collections.singleton(new Triple(
+                    new URI(assertion.getIndividual().asOWLNamedIndividual().getIRI().toString()),
+                    new URI(OWLRDFVocabulary.RDF_TYPE.getIRI().toString()),
+                    new URI(assertion.getClassExpression().asOWLClass().getIRI().toString())));
+        } else return Collections.emptySet();
+    }
+
+}
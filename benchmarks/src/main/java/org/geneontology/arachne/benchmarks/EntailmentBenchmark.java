@@ -0,0 +1,68 @@
+package org.geneontology.arachne.benchmarks;
+
+import org.geneontology.arachne.ArachneProtegeReasonerFactory;
+import org.openjdk.jmh.annotations.*;
+import org.semanticweb.owlapi.model.*;
+import org.semanticweb.owlapi.reasoner.OWLReasoner;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the latency of {@link OWLReasoner#isEntailed(OWLAxiom)} for Abox axioms and of {@link OWLReasoner#isConsistent()}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EntailmentBenchmark {
+
+    @Param({"1000"})
+    public int classes;
+
+    @Param({"10000"})
+    public int individuals;
+
+    @Param({"0.5"})
+    public double transitivity;
+
+    private OWLDataFactory factory;
+    private OWLReasoner reasoner;
+    private OWLObjectProperty property;
+    private final Random random = new Random(42);
+
+    @Setup
+    public void setup() throws OWLOntologyCreationException {
+        OWLOntology ontology = new SyntheticOntology(classes, individuals, 1.0, transitivity, 42).generate();
+        factory = ontology.getOWLOntologyManager().getOWLDataFactory();
+        property = SyntheticOntology.property(factory);
+        reasoner = new ArachneProtegeReasonerFactory().createReasoner(ontology);
+    }
+
+    @TearDown
+    public void tearDown() {
+        reasoner.dispose();
+    }
+
+    private OWLNamedIndividual randomIndividual() {
+        return SyntheticOntology.individual(factory, random.nextInt(individuals));
+    }
+
+    @Benchmark
+    public boolean isEntailedClassAssertion() {
+        return reasoner.isEntailed(factory.getOWLClassAssertionAxiom(SyntheticOntology.cls(factory, random.nextInt(classes)), randomIndividual()));
+    }
+
+    @Benchmark
+    public boolean isEntailedPropertyAssertion() {
+        return reasoner.isEntailed(factory.getOWLObjectPropertyAssertionAxiom(property, randomIndividual(), randomIndividual()));
+    }
+
+    @Benchmark
+    public boolean isConsistent() {
+        return reasoner.isConsistent();
+    }
+
+}
@@ -0,0 +1,94 @@
+package org.geneontology.arachne.benchmarks;
+
+import org.geneontology.arachne.ArachneProtegeReasonerFactory;
+import org.geneontology.arachne.ArachneReasonerConfiguration;
+import org.geneontology.jena.OWLtoRules;
+import org.geneontology.rules.engine.Rule;
+import org.geneontology.rules.engine.RuleEngine;
+import org.geneontology.rules.engine.Triple;
+import org.geneontology.rules.engine.WorkingMemory;
+import org.geneontology.rules.util.Bridge;
+import org.openjdk.jmh.annotations.*;
+import org.semanticweb.owlapi.model.*;
+import org.semanticweb.owlapi.model.parameters.Imports;
+import org.semanticweb.owlapi.reasoner.OWLReasoner;
+import scala.collection.JavaConverters;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a cold flush, i.e. creating a reasoner for an ontology, and each of its phases on its own:
+ * translating the Tbox to rules, constructing the rule engine and realizing the Abox.
+ * The phases use the same translation settings as the reasoner, but translate the Tbox in one pass.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class FlushBenchmark {
+
+    @Param({"1000"})
+    public int classes;
+
+    @Param({"10000"})
+    public int individuals;
+
+    @Param({"1.0"})
+    public double density;
+
+    @Param({"0.5"})
+    public double transitivity;
+
+    @Param({"1"})
+    public int parallelism;
+
+    private OWLOntology ontology;
+    private List<Rule> rules;
+    private RuleEngine engine;
+    private Set<Triple> triples;
+
+    @Setup
+    public void setup() throws OWLOntologyCreationException {
+        ontology = new SyntheticOntology(classes, individuals, density, transitivity, 42).generate();
+        rules = translateRules();
+        engine = buildEngine();
+        triples = new HashSet<>();
+        for (OWLAxiom axiom : ontology.getABoxAxioms(Imports.INCLUDED)) {
+            triples.addAll(Triples.asTriples(axiom));
+        }
+    }
+
+    @Benchmark
+    public OWLReasoner coldFlush() {
+        ArachneReasonerConfiguration config = new ArachneReasonerConfiguration()
+                .setAboxPartitioning(parallelism > 1).setRealizationParallelism(parallelism);
+        OWLReasoner reasoner = new ArachneProtegeReasonerFactory().createReasoner(ontology, config);
+        reasoner.dispose();
+        return reasoner;
+    }
+
+    @Benchmark
+    public List<Rule> translateRules() {
+        List<Rule> translated = new ArrayList<>(JavaConverters.asJavaCollection(
+                Bridge.rulesFromJena(OWLtoRules.translate(ontology, Imports.INCLUDED, true, true, false, true))));
+        translated.addAll(JavaConverters.asJavaCollection(Bridge.rulesFromJena(OWLtoRules.indirectRules(ontology))));
+        return translated;
+    }
+
+    @Benchmark
+    public RuleEngine buildEngine() {
+        return new RuleEngine(JavaConverters.asScalaBuffer(rules), true);
+    }
+
+    @Benchmark
+    public WorkingMemory realize() {
+        return engine.processTriples(JavaConverters.asScalaSet(triples));
+    }
+
+}
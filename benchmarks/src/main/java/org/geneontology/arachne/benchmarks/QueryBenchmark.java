@@ -0,0 +1,95 @@
+package org.geneontology.arachne.benchmarks;
+
+import org.geneontology.arachne.ArachneProtegeReasonerFactory;
+import org.openjdk.jmh.annotations.*;
+import org.semanticweb.owlapi.model.*;
+import org.semanticweb.owlapi.reasoner.NodeSet;
+import org.semanticweb.owlapi.reasoner.OWLReasoner;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the latency of the reasoner's indexed query methods against the equivalent SPARQL queries over a Jena model.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryBenchmark {
+
+    @Param({"1000"})
+    public int classes;
+
+    @Param({"10000"})
+    public int individuals;
+
+    @Param({"0.5"})
+    public double transitivity;
+
+    @Param({"true", "false"})
+    public boolean direct;
+
+    private OWLDataFactory factory;
+    private OWLReasoner reasoner;
+    private SparqlBaseline baseline;
+    private OWLObjectProperty property;
+    private int next = 0;
+
+    @Setup
+    public void setup() throws OWLOntologyCreationException {
+        OWLOntology ontology = new SyntheticOntology(classes, individuals, 1.0, transitivity, 42).generate();
+        factory = ontology.getOWLOntologyManager().getOWLDataFactory();
+        property = SyntheticOntology.property(factory);
+        reasoner = new ArachneProtegeReasonerFactory().createReasoner(ontology);
+        baseline = new SparqlBaseline(ontology);
+    }
+
+    @TearDown
+    public void tearDown() {
+        reasoner.dispose();
+    }
+
+    private OWLNamedIndividual nextIndividual() {
+        next = (next + 1) % individuals;
+        return SyntheticOntology.individual(factory, next);
+    }
+
+    private OWLClass nextClass() {
+        next = (next + 1) % classes;
+        return SyntheticOntology.cls(factory, next);
+    }
+
+    @Benchmark
+    public NodeSet<OWLClass> getTypesIndexed() {
+        return reasoner.getTypes(nextIndividual(), direct);
+    }
+
+    @Benchmark
+    public List<String> getTypesSparql() {
+        return baseline.getTypes(nextIndividual(), direct);
+    }
+
+    @Benchmark
+    public NodeSet<OWLNamedIndividual> getInstancesIndexed() {
+        return reasoner.getInstances(nextClass(), direct);
+    }
+
+    @Benchmark
+    public List<String> getInstancesSparql() {
+        return baseline.getInstances(nextClass(), direct);
+    }
+
+    @Benchmark
+    public NodeSet<OWLNamedIndividual> getObjectPropertyValuesIndexed() {
+        return reasoner.getObjectPropertyValues(nextIndividual(), property);
+    }
+
+    @Benchmark
+    public List<String> getObjectPropertyValuesSparql() {
+        return baseline.getObjectPropertyValues(nextIndividual(), property);
+    }
+
+}
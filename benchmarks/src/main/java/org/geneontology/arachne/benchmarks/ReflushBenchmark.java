@@ -0,0 +1,90 @@
+package org.geneontology.arachne.benchmarks;
+
+import org.geneontology.arachne.ArachneProtegeReasonerFactory;
+import org.geneontology.arachne.ArachneReasonerConfiguration;
+import org.openjdk.jmh.annotations.*;
+import org.semanticweb.owlapi.model.*;
+import org.semanticweb.owlapi.reasoner.OWLReasoner;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a warm flush after a single Abox or Tbox axiom is added to or removed from an ontology
+ * which has already been realized. The opposite edit is applied and flushed before each invocation,
+ * outside the measurement.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ReflushBenchmark {
+
+    @Param({"1000"})
+    public int classes;
+
+    @Param({"10000"})
+    public int individuals;
+
+    @Param({"1.0"})
+    public double density;
+
+    @Param({"0.5"})
+    public double transitivity;
+
+    @Param({"classAssertion", "propertyAssertion", "subClassOf"})
+    public String axiomType;
+
+    @Param({"add", "remove"})
+    public String change;
+
+    @Param({"true", "false"})
+    public boolean incremental;
+
+    private OWLOntologyManager manager;
+    private OWLOntology ontology;
+    private OWLReasoner reasoner;
+    private OWLAxiom axiom;
+
+    @Setup
+    public void setup() throws OWLOntologyCreationException {
+        ontology = new SyntheticOntology(classes, individuals, density, transitivity, 42).generate();
+        manager = ontology.getOWLOntologyManager();
+        OWLDataFactory factory = manager.getOWLDataFactory();
+        switch (axiomType) {
+            case "classAssertion":
+                axiom = factory.getOWLClassAssertionAxiom(SyntheticOntology.cls(factory, classes - 1), SyntheticOntology.individual(factory, individuals / 2));
+                break;
+            case "propertyAssertion":
+                axiom = factory.getOWLObjectPropertyAssertionAxiom(SyntheticOntology.property(factory),
+                        SyntheticOntology.individual(factory, 0), SyntheticOntology.individual(factory, individuals - 1));
+                break;
+            default:
+                axiom = factory.getOWLSubClassOfAxiom(SyntheticOntology.cls(factory, classes - 1), SyntheticOntology.cls(factory, 1));
+        }
+        ArachneReasonerConfiguration config = new ArachneReasonerConfiguration().setIncrementalRealization(incremental);
+        reasoner = new ArachneProtegeReasonerFactory().createReasoner(ontology, config);
+    }
+
+    @TearDown
+    public void tearDown() {
+        reasoner.dispose();
+    }
+
+    @Setup(Level.Invocation)
+    public void prepare() {
+        if (change.equals("add")) manager.removeAxiom(ontology, axiom);
+        else manager.addAxiom(ontology, axiom);
+        reasoner.flush();
+    }
+
+    @Benchmark
+    public OWLReasoner reflush() {
+        if (change.equals("add")) manager.addAxiom(ontology, axiom);
+        else manager.removeAxiom(ontology, axiom);
+        reasoner.flush();
+        return reasoner;
+    }
+
+}
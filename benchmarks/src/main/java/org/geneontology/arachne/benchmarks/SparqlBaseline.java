@@ -0,0 +1,86 @@
+package org.geneontology.arachne.benchmarks;
+
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.query.QueryExecutionFactory;
+import org.apache.jena.query.QueryFactory;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.geneontology.jena.OWLtoRules;
+import org.geneontology.rules.engine.Rule;
+import org.geneontology.rules.engine.RuleEngine;
+import org.geneontology.rules.engine.Triple;
+import org.geneontology.rules.engine.WorkingMemory;
+import org.geneontology.rules.util.Bridge;
+import org.semanticweb.owlapi.model.*;
+import org.semanticweb.owlapi.model.parameters.Imports;
+import scala.collection.GenSet;
+import scala.collection.JavaConverters;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The SPARQL-over-Jena query path the reasoner used before facts were indexed natively,
+ * kept here as a point of comparison.
+ */
+public class SparqlBaseline {
+
+    private final Model model = ModelFactory.createDefaultModel();
+
+    @SuppressWarnings("unchecked")
+    public SparqlBaseline(OWLOntology ontology) {
+        scala.collection.Iterable<Rule> rules = Bridge.rulesFromJena(
+                ((GenSet<org.apache.jena.reasoner.rulesys.Rule>) (OWLtoRules.translate(ontology, Imports.INCLUDED, true, true, false, true)))
+                        .union(OWLtoRules.indirectRules(ontology)).seq());
+        RuleEngine arachne = new RuleEngine(rules, true);
+        Set<Triple> triples = new HashSet<>();
+        for (OWLAxiom axiom : ontology.getABoxAxioms(Imports.EXCLUDED)) {
+            triples.addAll(Triples.asTriples(axiom));
+        }
+        WorkingMemory wm = arachne.processTriples(JavaConverters.asScalaSet(triples));
+        for (Triple triple : JavaConverters.setAsJavaSet(wm.facts())) {
+            model.add(model.asStatement(Bridge.jenaFromTriple(triple)));
+        }
+    }
+
+    public List<String> getTypes(OWLNamedIndividual ind, boolean direct) {
+        String query = "PREFIX rdf: <http://www.w3.org/1999/02/22-rdf-syntax-ns#> " +
+                "PREFIX owl: <http://www.w3.org/2002/07/owl#> " +
+                "SELECT DISTINCT ?o WHERE { " +
+                "<" + ind.getIRI() + "> rdf:type ?o . " +
+                "FILTER(isIRI(?o)) " +
+                "FILTER(?o != owl:NamedIndividual) " +
+                (direct ? "FILTER NOT EXISTS { <" + ind.getIRI() + "> <" + OWLtoRules.IndirectType() + "> ?o . } " : "") +
+                "}";
+        return select(query, "o");
+    }
+
+    public List<String> getInstances(OWLClass cls, boolean direct) {
+        String query = "PREFIX rdf: <http://www.w3.org/1999/02/22-rdf-syntax-ns#> " +
+                "SELECT DISTINCT ?s WHERE { " +
+                "?s rdf:type <" + cls.getIRI() + "> " +
+                "FILTER(isIRI(?s)) " +
+                (direct ? "FILTER NOT EXISTS {?s <" + OWLtoRules.IndirectType() + "> <" + cls.getIRI() + "> .}" : "") +
+                "}";
+        return select(query, "s");
+    }
+
+    public List<String> getObjectPropertyValues(OWLNamedIndividual ind, OWLObjectProperty property) {
+        String query = "SELECT DISTINCT ?o WHERE { " +
+                "<" + ind.getIRI() + "> <" + property.getIRI() + "> ?o ." +
+                "FILTER(isIRI(?o)) " +
+                "}";
+        return select(query, "o");
+    }
+
+    private List<String> select(String query, String variable) {
+        List<String> results = new ArrayList<>();
+        QueryExecution execution = QueryExecutionFactory.create(QueryFactory.create(query), model);
+        execution.execSelect().forEachRemaining(qs -> results.add(qs.getResource(variable).getURI()));
+        execution.close();
+        return results;
+    }
+
+}
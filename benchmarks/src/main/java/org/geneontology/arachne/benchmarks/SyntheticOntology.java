@@ -0,0 +1,78 @@
+package org.geneontology.arachne.benchmarks;
+
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.*;
+
+import java.util.*;
+
+/**
+ * Generates a Tbox with a tree-shaped class hierarchy and an Abox of typed individuals
+ * linked by object property assertions. Generation is deterministic for a given seed.
+ * <p>
+ * The transitivity is the fraction of links which use the transitive {@code part_of} property;
+ * the rest use the plain {@code linked_to} property, which derives nothing.
+ */
+public class SyntheticOntology {
+
+    public static final String NAMESPACE = "http://example.org/arachne/benchmark/";
+
+    private final int classCount;
+    private final int individualCount;
+    private final double propertyDensity;
+    private final double transitivity;
+    private final long seed;
+
+    public SyntheticOntology(int classCount, int individualCount, double propertyDensity, long seed) {
+        this(classCount, individualCount, propertyDensity, 1.0, seed);
+    }
+
+    public SyntheticOntology(int classCount, int individualCount, double propertyDensity, double transitivity, long seed) {
+        this.classCount = classCount;
+        this.individualCount = individualCount;
+        this.propertyDensity = propertyDensity;
+        this.transitivity = transitivity;
+        this.seed = seed;
+    }
+
+    public OWLOntology generate() throws OWLOntologyCreationException {
+        OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+        OWLDataFactory factory = manager.getOWLDataFactory();
+        Random random = new Random(seed);
+        Set<OWLAxiom> axioms = new HashSet<>();
+        for (int i = 1; i < classCount; i++) {
+            axioms.add(factory.getOWLSubClassOfAxiom(cls(factory, i), cls(factory, (i - 1) / 2)));
+        }
+        OWLObjectProperty partOf = property(factory);
+        OWLObjectProperty linkedTo = plainProperty(factory);
+        axioms.add(factory.getOWLTransitiveObjectPropertyAxiom(partOf));
+        for (int i = 0; i < individualCount; i++) {
+            axioms.add(factory.getOWLClassAssertionAxiom(cls(factory, random.nextInt(classCount)), individual(factory, i)));
+        }
+        long links = Math.round(individualCount * propertyDensity);
+        for (long l = 0; l < links; l++) {
+            int subject = random.nextInt(individualCount);
+            // Link only to nearby individuals so that the Abox splits into many small connected parts
+            int object = Math.min(individualCount - 1, subject + 1 + random.nextInt(4));
+            OWLObjectProperty link = random.nextDouble() < transitivity ? partOf : linkedTo;
+            axioms.add(factory.getOWLObjectPropertyAssertionAxiom(link, individual(factory, subject), individual(factory, object)));
+        }
+        return manager.createOntology(axioms);
+    }
+
+    public static OWLClass cls(OWLDataFactory factory, int i) {
+        return factory.getOWLClass(IRI.create(NAMESPACE + "C" + i));
+    }
+
+    public static OWLNamedIndividual individual(OWLDataFactory factory, int i) {
+        return factory.getOWLNamedIndividual(IRI.create(NAMESPACE + "i" + i));
+    }
+
+    public static OWLObjectProperty property(OWLDataFactory factory) {
+        return factory.getOWLObjectProperty(IRI.create(NAMESPACE + "part_of"));
+    }
+
+    public static OWLObjectProperty plainProperty(OWLDataFactory factory) {
+        return factory.getOWLObjectProperty(IRI.create(NAMESPACE + "linked_to"));
+    }
+
+}
@@ -0,0 +1,41 @@
+package org.geneontology.arachne.benchmarks;
+
+import org.geneontology.rules.engine.Triple;
+import org.geneontology.rules.engine.URI;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLClassAssertionAxiom;
+import org.semanticweb.owlapi.model.OWLObjectPropertyAssertionAxiom;
+import org.semanticweb.owlapi.vocab.OWLRDFVocabulary;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Minimal axiom to triple conversion for the named individuals produced by {@link SyntheticOntology}.
+ */
+final class Triples {
+
+    private static final URI RDF_TYPE = new URI(OWLRDFVocabulary.RDF_TYPE.getIRI().toString());
+
+    private Triples() {
+    }
+
+    static Set<Triple> asTriples(OWLAxiom axiom) {
+        if (axiom instanceof OWLClassAssertionAxiom) {
+            OWLClassAssertionAxiom assertion = (OWLClassAssertionAxiom) axiom;
+            if (assertion.getClassExpression().isAnonymous() || !assertion.getIndividual().isNamed()) return Collections.emptySet();
+            return Collections.singleton(new Triple(
+                    new URI(assertion.getIndividual().asOWLNamedIndividual().getIRI().toString()),
+                    RDF_TYPE,
+                    new URI(assertion.getClassExpression().asOWLClass().getIRI().toString())));
+        } else if (axiom instanceof OWLObjectPropertyAssertionAxiom) {
+            OWLObjectPropertyAssertionAxiom assertion = (OWLObjectPropertyAssertionAxiom) axiom;
+            if (assertion.getProperty().isAnonymous() || !assertion.getSubject().isNamed() || !assertion.getObject().isNamed()) return Collections.emptySet();
+            return Collections.singleton(new Triple(
+                    new URI(assertion.getSubject().asOWLNamedIndividual().getIRI().toString()),
+                    new URI(assertion.getProperty().asOWLObjectProperty().getIRI().toString()),
+                    new URI(assertion.getObject().asOWLNamedIndividual().getIRI().toString())));
+        } else return Collections.emptySet();
+    }
+
+}
@@ -0,0 +1,483 @@
+package org.geneontology.arachne;
+
+import org.geneontology.rules.engine.*;
+import org.semanticweb.owlapi.reasoner.ReasonerInterruptedException;
+import org.semanticweb.owlapi.vocab.OWLRDFVocabulary;
+import scala.collection.JavaConverters;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.stream.StreamSupport;
+
+/**
+ * Holds the working memories of a realized Abox for one rule engine.
+ * <p>
+ * Without partitioning, the Abox is realized in a single working memory, and a retraction realizes it again in full.
+ * With partitioning, the asserted triples are split into components using union-find, joining linked individuals
+ * and each individual with the rule constants its facts may link it to, see {@link ConstantLinks}. The components
+ * are packed into bins, each realized in its own working memory, all sharing the one rule engine. An update only
+ * re-realizes the bins containing retracted triples, so the cost of a retraction is bounded by its bin rather than
+ * the whole Abox. Added triples are pushed into the existing working memory of their bin in either case.
+ * With an executor the bins are realized concurrently; the partitioning is the same without one.
+ * <p>
+ * Individuals found to be the same, by asserted or derived owl:sameAs facts, are merged in a union-find per bin.
+ * Each bin is realized over one representative per equivalence class, so facts are not copied onto every member.
+ * Individuals named in the rules, e.g. by ObjectHasValue or ObjectOneOf, are preferred as representatives and are
+ * never rewritten away, since their rules only match facts about them; if a class has several, facts about one
+ * are copied onto the others. After a merge the facts already realized are pushed again over the new
+ * representatives into the same working memory, until no new owl:sameAs facts link different representatives.
+ * {@link #facts()} reports each other member with a single owl:sameAs fact pointing to its representative.
+ */
+final class AboxRealizer {
+
+    private static final URI RDF_TYPE = new URI(OWLRDFVocabulary.RDF_TYPE.getIRI().toString());
+    private static final URI OWL_SAME_AS = new URI(OWLRDFVocabulary.OWL_SAME_AS.getIRI().toString());
+
+    /**
+     * Components are packed into bins of about this many asserted triples: enough to limit per-memory overhead,
+     * few enough that re-realizing a bin after a retraction stays cheap. A larger component gets a bin of its own.
+     */
+    private static final int BIN_SIZE = 1000;
+
+    private static final class Bin {
+
+        final Set<Triple> asserted = new HashSet<>();
+        final Set<URI> constants;
+        UnionFind<Resource> equality;
+        boolean merged;
+        /**
+         * Set when the bin was merged into another by an update
+         */
+        boolean retired = false;
+        /**
+         * Rule constants of each equivalence class with more than one, by representative; null if not yet computed
+         */
+        private Map<Resource, List<Resource>> peers;
+        WorkingMemory memory = null;
+
+        Bin(Set<URI> constants) {
+            this.constants = constants;
+            resetEquality();
+        }
+
+        void resetEquality() {
+            equality = new UnionFind<>(constants::contains);
+            merged = false;
+            peers = null;
+        }
+
+        /**
+         * @return the node the facts about the given one are realized over: its representative, unless it is a rule constant
+         */
+        Resource representative(Resource node) {
+            return merged && !constants.contains(node) && equality.contains(node) ? equality.representative(node) : node;
+        }
+
+        /**
+         * @return the representative of the node's equivalence class, which is a rule constant if the class has one
+         */
+        Resource root(Resource node) {
+            return merged && equality.contains(node) ? equality.representative(node) : node;
+        }
+
+        Triple rewrite(Triple triple) {
+            if (!merged) return triple;
+            Resource subject = representative(triple.s());
+            ConcreteNode object = triple.o() instanceof Resource ? representative((Resource) triple.o()) : triple.o();
+            if (subject == triple.s() && object == triple.o()) return triple;
+            else return new Triple(subject, triple.p(), object);
+        }
+
+        /**
+         * @return the triple over the roots of its terms, as reported by {@link #facts()}
+         */
+        Triple canonical(Triple triple) {
+            Resource subject = root(triple.s());
+            ConcreteNode object = triple.o() instanceof Resource ? root((Resource) triple.o()) : triple.o();
+            if (subject == triple.s() && object == triple.o()) return triple;
+            else return new Triple(subject, triple.p(), object);
+        }
+
+        /**
+         * @return the forms the fact must also have in the working memory: over the current representatives,
+         * and with each rule constant replaced by the others of its class
+         */
+        List<Triple> variants(Triple fact) {
+            if (isSameAs(fact)) return Collections.emptyList();
+            Resource subject = representative(fact.s());
+            ConcreteNode object = fact.o() instanceof Resource ? representative((Resource) fact.o()) : fact.o();
+            List<Triple> variants = new ArrayList<>(1);
+            for (Resource s : peers(subject)) {
+                for (ConcreteNode o : object instanceof Resource ? peers((Resource) object) : Collections.singletonList(object)) {
+                    if (s != fact.s() || o != fact.o()) variants.add(new Triple(s, fact.p(), o));
+                }
+            }
+            return variants;
+        }
+
+        private List<Resource> peers(Resource node) {
+            if (!constants.contains(node)) return Collections.singletonList(node);
+            List<Resource> peers = peerGroups().get(equality.representative(node));
+            return peers != null ? peers : Collections.singletonList(node);
+        }
+
+        boolean hasPeers() {
+            return merged && !peerGroups().isEmpty();
+        }
+
+        private Map<Resource, List<Resource>> peerGroups() {
+            if (peers == null) {
+                Map<Resource, List<Resource>> groups = new HashMap<>();
+                for (Resource element : equality.elements()) {
+                    if (constants.contains(element)) groups.computeIfAbsent(equality.representative(element), k -> new ArrayList<>()).add(element);
+                }
+                groups.values().removeIf(group -> group.size() < 2);
+                peers = groups;
+            }
+            return peers;
+        }
+
+        Iterable<Triple> rewrite(Collection<Triple> triples) {
+            if (!merged) return triples;
+            return () -> triples.stream().map(this::rewrite).iterator();
+        }
+
+        /**
+         * @return true if an owl:sameAs triple joined two equivalence classes
+         */
+        boolean merge(Iterable<Triple> triples) {
+            boolean joined = false;
+            for (Triple triple : triples) {
+                if (isSameAs(triple) && !triple.s().equals(triple.o())) {
+                    joined |= equality.union(triple.s(), (Resource) triple.o());
+                }
+            }
+            merged |= joined;
+            if (joined) peers = null;
+            return joined;
+        }
+
+    }
+
+    private final RuleEngine engine;
+    private final ExecutorService executor;
+    private final boolean derivesSameAs;
+    private final Set<URI> constants;
+    private final ConstantLinks links;
+    private final List<Bin> bins = new ArrayList<>();
+    private final Map<Resource, Bin> binOf = new HashMap<>();
+
+    /**
+     * @param executor      pool for realizing bins concurrently, or null to realize them one after another
+     * @param derivesSameAs whether any rule concludes owl:sameAs, as given by {@link #derivesSameAs(Collection)};
+     *                      if not, realized facts are never searched for new merges
+     * @param constants     individuals named in the rules, as given by {@link #ruleConstants(Collection)}
+     * @param links         links of facts to the constants, to partition the Abox by, or null to realize it
+     *                      in a single working memory
+     */
+    AboxRealizer(RuleEngine engine, ExecutorService executor, boolean derivesSameAs, Set<URI> constants, ConstantLinks links) {
+        this.engine = engine;
+        this.executor = executor;
+        this.derivesSameAs = derivesSameAs;
+        this.constants = constants;
+        this.links = links;
+    }
+
+    static boolean derivesSameAs(Collection<Rule> rules) {
+        for (Rule rule : rules) {
+            for (TriplePattern pattern : JavaConverters.seqAsJavaList(rule.head())) {
+                if (pattern.p().equals(OWL_SAME_AS)) return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the URIs in subject or object position of the rules' patterns, other than the classes of
+     * rdf:type patterns; these are the individuals the rules name
+     */
+    static Set<URI> ruleConstants(Collection<Rule> rules) {
+        Set<URI> constants = new HashSet<>();
+        for (Rule rule : rules) {
+            List<TriplePattern> patterns = new ArrayList<>(JavaConverters.seqAsJavaList(rule.body()));
+            patterns.addAll(JavaConverters.seqAsJavaList(rule.head()));
+            for (TriplePattern pattern : patterns) {
+                if (pattern.s() instanceof URI) constants.add((URI) pattern.s());
+                if (pattern.o() instanceof URI && !pattern.p().equals(RDF_TYPE)) constants.add((URI) pattern.o());
+            }
+        }
+        return constants;
+    }
+
+    /**
+     * Realizes the triples from scratch.
+     */
+    void realizeAll(Set<Triple> triples, RealizationGuard guard, TaskProgress progress) {
+        bins.clear();
+        binOf.clear();
+        if (links == null) {
+            Bin bin = new Bin(constants);
+            bin.asserted.addAll(triples);
+            bins.add(bin);
+        } else {
+            UnionFind<Resource> components = new UnionFind<>();
+            for (Triple triple : triples) {
+                components.add(triple.s());
+                for (Resource linked : linked(triple)) {
+                    components.union(triple.s(), linked);
+                }
+            }
+            Map<Integer, List<Triple>> byComponent = new HashMap<>();
+            for (Triple triple : triples) {
+                byComponent.computeIfAbsent(components.find(triple.s()), k -> new ArrayList<>()).add(triple);
+            }
+            Bin filling = null;
+            for (List<Triple> component : byComponent.values()) {
+                if (filling == null || filling.asserted.size() >= BIN_SIZE) {
+                    filling = new Bin(constants);
+                    bins.add(filling);
+                }
+                for (Triple triple : component) {
+                    filling.asserted.add(triple);
+                    assign(triple, filling);
+                }
+            }
+        }
+        progress.begin(triples.size());
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (Bin bin : bins) {
+            tasks.add(() -> {
+                realizeFromScratch(bin, guard, progress);
+                return null;
+            });
+        }
+        run(tasks);
+    }
+
+    /**
+     * Applies asserted triple changes. Bins with retracted triples are realized again from their remaining
+     * asserted triples; added triples are processed into the existing working memory of their bin.
+     * Bins connected by an added triple, directly or through a rule constant, are merged and realized again.
+     */
+    void update(Set<Triple> added, Set<Triple> removed, RealizationGuard guard, TaskProgress progress) {
+        Set<Bin> stale = new HashSet<>();
+        Map<Bin, Set<Triple>> pending = new HashMap<>();
+        for (Triple triple : removed) {
+            Bin bin = binOf(triple.s());
+            if (bin != null && bin.asserted.remove(triple)) stale.add(bin);
+        }
+        for (Triple triple : added) {
+            Bin bin = binFor(triple, stale);
+            if (bin.asserted.add(triple)) pending.computeIfAbsent(bin, k -> new HashSet<>()).add(triple);
+        }
+        long retained = 0;
+        for (Bin bin : bins) {
+            if (bin.memory != null && !stale.contains(bin)) retained += bin.memory.facts().size();
+        }
+        // The fact budget covers the facts kept in the working memories which are not realized again
+        guard.countFacts(retained);
+        long work = 0;
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (Bin bin : stale) {
+            work += bin.asserted.size();
+            tasks.add(() -> {
+                realizeFromScratch(bin, guard, progress);
+                return null;
+            });
+        }
+        for (Map.Entry<Bin, Set<Triple>> entry : pending.entrySet()) {
+            Bin bin = entry.getKey();
+            if (stale.contains(bin) || bin.retired) continue;
+            work += bin.memory == null ? bin.asserted.size() : entry.getValue().size();
+            tasks.add(() -> {
+                if (bin.memory == null) {
+                    realizeFromScratch(bin, guard, progress);
+                } else {
+                    boolean joined = bin.merge(entry.getValue());
+                    Set<Triple> triples = new HashSet<>();
+                    for (Triple triple : bin.rewrite(entry.getValue())) {
+                        if (!bin.memory.facts().contains(triple)) triples.add(triple);
+                    }
+                    WorkingMemories.add(engine, guard.watch(triples, progress), bin.memory, guard);
+                    propagateMerges(bin, joined, guard, progress);
+                }
+                return null;
+            });
+        }
+        progress.begin(work);
+        run(tasks);
+    }
+
+    /**
+     * @return all facts of all bins, over the representatives of merged individuals, plus an owl:sameAs fact
+     * from each other member to its representative; facts about shared terms may be repeated across bins
+     */
+    Iterable<Triple> facts() {
+        List<Iterable<Triple>> memories = new ArrayList<>();
+        for (Bin bin : bins) {
+            if (bin.memory == null) continue;
+            Collection<Triple> facts = withoutClash(JavaConverters.setAsJavaSet(bin.memory.facts()));
+            if (!bin.merged) {
+                memories.add(facts);
+            } else {
+                // The memory also holds facts over former representatives and copies between rule constants,
+                // which collapse onto the roots; owl:sameAs facts are replaced by the member links below
+                memories.add(() -> facts.stream().filter(fact -> !isSameAs(fact)).map(bin::canonical).iterator());
+                List<Triple> members = new ArrayList<>();
+                for (Resource member : bin.equality.elements()) {
+                    Resource root = bin.root(member);
+                    if (!root.equals(member)) members.add(new Triple(member, OWL_SAME_AS, root));
+                }
+                memories.add(members);
+            }
+        }
+        return () -> memories.stream().flatMap(facts -> StreamSupport.stream(facts.spliterator(), false)).iterator();
+    }
+
+    /**
+     * @return asserted triples of all bins
+     */
+    Iterable<Triple> asserted() {
+        return () -> bins.stream().flatMap(bin -> bin.asserted.stream()).iterator();
+    }
+
+    private static Collection<Triple> withoutClash(Set<Triple> facts) {
+        if (!facts.contains(CompiledRules.CLASH)) return facts;
+        List<Triple> filtered = new ArrayList<>(facts);
+        filtered.remove(CompiledRules.CLASH);
+        return filtered;
+    }
+
+    private void realizeFromScratch(Bin bin, RealizationGuard guard, TaskProgress progress) {
+        bin.resetEquality();
+        bin.merge(bin.asserted);
+        bin.memory = null;
+        WorkingMemory memory = WorkingMemories.empty(engine);
+        bin.memory = WorkingMemories.add(engine, guard.watch(bin.rewrite(bin.asserted), progress), memory, guard);
+        propagateMerges(bin, false, guard, progress);
+    }
+
+    /**
+     * Pushes the variants of the bin's facts which are missing from its working memory, see {@link Bin#variants(Triple)},
+     * repeating while derived owl:sameAs facts merge further individuals. Facts over former representatives stay
+     * in the memory: they are true, and whatever they derive is also derived over the representatives.
+     *
+     * @param joined whether equivalence classes were joined since the memory was last brought up to date
+     */
+    private void propagateMerges(Bin bin, boolean joined, RealizationGuard guard, TaskProgress progress) {
+        joined |= mergeDerived(bin);
+        while (joined || bin.hasPeers()) {
+            List<Triple> missing = new ArrayList<>();
+            for (Triple fact : new ArrayList<>(JavaConverters.setAsJavaSet(bin.memory.facts()))) {
+                for (Triple variant : bin.variants(fact)) {
+                    if (!bin.memory.facts().contains(variant)) missing.add(variant);
+                }
+            }
+            if (missing.isEmpty()) return;
+            WorkingMemories.add(engine, guard.watch(missing, progress), bin.memory, guard);
+            joined = mergeDerived(bin);
+        }
+    }
+
+    private boolean mergeDerived(Bin bin) {
+        return derivesSameAs && bin.merge(JavaConverters.setAsJavaSet(bin.memory.facts()));
+    }
+
+    private void run(List<Callable<Void>> tasks) {
+        if (executor == null || tasks.size() < 2) {
+            for (Callable<Void> task : tasks) {
+                try {
+                    task.call();
+                } catch (RuntimeException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        } else {
+            try {
+                for (Future<Void> future : executor.invokeAll(tasks)) {
+                    future.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ReasonerInterruptedException(e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+                else throw new IllegalStateException(e.getCause());
+            }
+        }
+    }
+
+    private Bin binOf(Resource node) {
+        if (links == null) return bins.isEmpty() ? null : bins.get(0);
+        return binOf.get(node);
+    }
+
+    private void assign(Triple triple, Bin bin) {
+        if (links == null) return;
+        binOf.put(triple.s(), bin);
+        for (Resource linked : linked(triple)) {
+            binOf.put(linked, bin);
+        }
+    }
+
+    private Bin binFor(Triple triple, Set<Bin> stale) {
+        Bin bin = binOf(triple.s());
+        for (Resource linked : linked(triple)) {
+            Bin other = binOf(linked);
+            if (bin == null) bin = other;
+            else if (other != null && other != bin) bin = merge(bin, other, stale);
+        }
+        if (bin == null) {
+            bin = new Bin(constants);
+            bins.add(bin);
+        }
+        assign(triple, bin);
+        return bin;
+    }
+
+    /**
+     * @return the nodes the subject of the triple must share a bin with: its object if that is an individual,
+     * and the rule constants the triple may link the subject to
+     */
+    private List<Resource> linked(Triple triple) {
+        Resource object = linkedObject(triple);
+        if (links == null) return object != null ? Collections.singletonList(object) : Collections.emptyList();
+        List<Resource> linked = new ArrayList<>(links.reached(triple));
+        linked.addAll(links.everywhere());
+        if (object != null) linked.add(object);
+        return linked;
+    }
+
+    private Bin merge(Bin a, Bin b, Set<Bin> stale) {
+        Bin into = a.asserted.size() >= b.asserted.size() ? a : b;
+        Bin from = into == a ? b : a;
+        into.asserted.addAll(from.asserted);
+        for (Triple triple : from.asserted) {
+            assign(triple, into);
+        }
+        bins.remove(from);
+        from.retired = true;
+        stale.remove(from);
+        stale.add(into);
+        into.memory = null;
+        return into;
+    }
+
+    private static boolean isSameAs(Triple triple) {
+        return triple.p().equals(OWL_SAME_AS) && triple.o() instanceof Resource;
+    }
+
+    /**
+     * @return the object of the triple if it links two individuals
+     */
+    private static Resource linkedObject(Triple triple) {
+        if (!triple.p().equals(RDF_TYPE) && triple.o() instanceof Resource) return (Resource) triple.o();
+        else return null;
+    }
+
+}
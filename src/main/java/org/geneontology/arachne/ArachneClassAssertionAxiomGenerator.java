@@ -0,0 +1,54 @@
+package org.geneontology.arachne;
+
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLClassAssertionAxiom;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLNamedIndividual;
+import org.semanticweb.owlapi.model.parameters.Imports;
+import org.semanticweb.owlapi.reasoner.OWLReasoner;
+import org.semanticweb.owlapi.util.InferredAxiomGenerator;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Generates inferred class assertions for {@link org.semanticweb.owlapi.util.InferredOntologyGenerator}
+ * using the bulk export of {@link ArachneProtegeReasoner}. Other reasoners are queried per individual.
+ */
+public class ArachneClassAssertionAxiomGenerator implements InferredAxiomGenerator<OWLClassAssertionAxiom> {
+
+    private final boolean direct;
+
+    /**
+     * @param direct if true, only direct types are generated
+     */
+    public ArachneClassAssertionAxiomGenerator(boolean direct) {
+        this.direct = direct;
+    }
+
+    public ArachneClassAssertionAxiomGenerator() {
+        this(false);
+    }
+
+    @Override
+    public Set<OWLClassAssertionAxiom> createAxioms(OWLDataFactory df, OWLReasoner reasoner) {
+        if (reasoner instanceof ArachneProtegeReasoner) {
+            return ((ArachneProtegeReasoner) reasoner).getInferredClassAssertions(direct).collect(Collectors.toSet());
+        } else {
+            Set<OWLClassAssertionAxiom> axioms = new HashSet<>();
+            for (OWLNamedIndividual individual : reasoner.getRootOntology().getIndividualsInSignature(Imports.INCLUDED)) {
+                for (OWLClass type : reasoner.getTypes(individual, direct).getFlattened()) {
+                    axioms.add(df.getOWLClassAssertionAxiom(type, individual));
+                }
+            }
+            return axioms;
+        }
+    }
+
+    @Override
+    public String getLabel() {
+        return direct ? "Class assertions (direct individual types)" : "Class assertions (individual types)";
+    }
+
+}
@@ -0,0 +1,44 @@
+package org.geneontology.arachne;
+
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLNamedIndividual;
+import org.semanticweb.owlapi.model.OWLObjectProperty;
+import org.semanticweb.owlapi.model.OWLObjectPropertyAssertionAxiom;
+import org.semanticweb.owlapi.model.parameters.Imports;
+import org.semanticweb.owlapi.reasoner.OWLReasoner;
+import org.semanticweb.owlapi.util.InferredAxiomGenerator;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Generates inferred object property assertions for {@link org.semanticweb.owlapi.util.InferredOntologyGenerator}
+ * using the bulk export of {@link ArachneProtegeReasoner}. Other reasoners are queried per individual and property.
+ */
+public class ArachneObjectPropertyAssertionAxiomGenerator implements InferredAxiomGenerator<OWLObjectPropertyAssertionAxiom> {
+
+    @Override
+    public Set<OWLObjectPropertyAssertionAxiom> createAxioms(OWLDataFactory df, OWLReasoner reasoner) {
+        if (reasoner instanceof ArachneProtegeReasoner) {
+            return ((ArachneProtegeReasoner) reasoner).getInferredObjectPropertyAssertions().collect(Collectors.toSet());
+        } else {
+            Set<OWLObjectPropertyAssertionAxiom> axioms = new HashSet<>();
+            Set<OWLObjectProperty> properties = reasoner.getRootOntology().getObjectPropertiesInSignature(Imports.INCLUDED);
+            for (OWLNamedIndividual individual : reasoner.getRootOntology().getIndividualsInSignature(Imports.INCLUDED)) {
+                for (OWLObjectProperty property : properties) {
+                    for (OWLNamedIndividual value : reasoner.getObjectPropertyValues(individual, property).getFlattened()) {
+                        axioms.add(df.getOWLObjectPropertyAssertionAxiom(property, individual, value));
+                    }
+                }
+            }
+            return axioms;
+        }
+    }
+
+    @Override
+    public String getLabel() {
+        return "Object property assertions";
+    }
+
+}
@@ -1,14 +1,7 @@
 package org.geneontology.arachne;
 
-import org.apache.jena.query.QueryExecution;
-import org.apache.jena.query.QueryExecutionFactory;
-import org.apache.jena.query.QueryFactory;
-import org.apache.jena.query.QuerySolution;
-import org.apache.jena.rdf.model.Model;
-import org.apache.jena.rdf.model.ModelFactory;
 import org.geneontology.jena.OWLtoRules;
 import org.geneontology.rules.engine.*;
-import org.geneontology.rules.util.Bridge;
 import org.semanticweb.owlapi.apibinding.OWLManager;
 import org.semanticweb.owlapi.model.*;
 import org.semanticweb.owlapi.model.parameters.Imports;
@@ -22,34 +15,93 @@ import org.semanticweb.owlapi.util.Version;
 import org.semanticweb.owlapi.vocab.OWLRDFVocabulary;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import scala.collection.GenSet;
 import scala.collection.JavaConverters;
 
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 public class ArachneProtegeReasoner implements OWLReasoner {
 
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
+    private static final URI RDF_TYPE = new URI(OWLRDFVocabulary.RDF_TYPE.getIRI().toString());
+    private static final URI INDIRECT_TYPE = new URI(OWLtoRules.IndirectType());
+    private static final URI OWL_SAME_AS = new URI(OWLRDFVocabulary.OWL_SAME_AS.getIRI().toString());
+    private static final URI OWL_DIFFERENT_FROM = new URI(OWLRDFVocabulary.OWL_DIFFERENT_FROM.getIRI().toString());
+    private static final URI OWL_NAMED_INDIVIDUAL = new URI(OWLRDFVocabulary.OWL_NAMED_INDIVIDUAL.getIRI().toString());
+    private static final URI OWL_NOTHING = new URI(OWLRDFVocabulary.OWL_NOTHING.getIRI().toString());
+
+    /**
+     * Maximum number of compiled class expression plans kept for {@link #getInstances(OWLClassExpression, boolean)}
+     */
+    private static final int PLAN_CACHE_SIZE = 1000;
+
     private final OWLOntology ontology;
     private final BufferingMode bufferingMode;
-    private final OWLReasonerConfiguration config;
+    private final ArachneReasonerConfiguration config;
     private final ReasonerProgressMonitor monitor;
+    private final ReasonerMetrics metrics;
 
     private AtomicBoolean pendingRuleChanges = new AtomicBoolean(true);
     private AtomicBoolean pendingDataChanges = new AtomicBoolean(true);
+    private final AtomicBoolean interruptRequested = new AtomicBoolean(false);
     private final List<OWLOntologyChange> pendingChanges = new ArrayList<>();
     private final Set<OWLAxiom> pendingAxiomAdditions = new HashSet<>();
     private final Set<OWLAxiom> pendingAxiomRemovals = new HashSet<>();
-
-    private RuleEngine arachne = null;
-    private final Model model = ModelFactory.createDefaultModel();
+    private final Set<OWLAxiom> deferredRuleAxioms = new HashSet<>();
+    private Set<URI> aboxVocabulary = null;
+
+    private final RuleCache ruleCache;
+    private final MaterializationStore materializations;
+    private String ruleFingerprint = null;
+    /**
+     * Fingerprint of the rule cache entry last written or loaded by this reasoner, replaced by the next one stored
+     */
+    private String ruleCacheKey = null;
+    /**
+     * Whether the translator holds translations not yet written to the rule cache
+     */
+    private boolean ruleCachePending = false;
+    /**
+     * Key of the stored realization last written or loaded by this reasoner, replaced by the next one stored
+     */
+    private String materializationKey = null;
+    /**
+     * Whether the published facts come from incremental changes not yet written to the materialization store
+     */
+    private boolean materializationPending = false;
+    /**
+     * Replaced by a translator seeded from the shared engine when another reasoner has translated the Tbox
+     */
+    private RuleTranslator ruleTranslator = new RuleTranslator(false);
+    private final EngineCache engines;
+    private String engineKey = null;
+    private volatile CompiledRules compiled = null;
+    private volatile AboxRealizer realizer = null;
+    private volatile RealizationSnapshot snapshot = RealizationSnapshot.EMPTY;
+    private final Object snapshotLock = new Object();
+    private final Set<InferenceType> requestedPrecomputation = EnumSet.noneOf(InferenceType.class);
+    private final QueryCache queryCache;
+    private final ThreadLocal<long[]> queryGeneration = ThreadLocal.withInitial(() -> new long[1]);
+    private ExecutorService realizationExecutor = null;
+    private ForkJoinPool componentPool = null;
+    private volatile Future<?> lastRealization = null;
 
     private final OWLDataFactory factory = OWLManager.getOWLDataFactory();
+    private final TripleBridge bridge = new TripleBridge();
 
+    private final TboxHierarchy tbox;
+    /**
+     * Answers the Tbox queries not covered by the told hierarchies; created and flushed only when such a query is made
+     */
     private OWLReasoner structuralReasoner = null;
+    private final LruCache<OWLClassExpression, ClassExpressionPlan> plans = new LruCache<>(PLAN_CACHE_SIZE);
+    private boolean structuralReasonerStale = false;
 
     private OWLOntologyChangeListener changeListener = new OWLOntologyChangeListener() {
 
@@ -60,19 +112,15 @@ public class ArachneProtegeReasoner implements OWLReasoner {
                     pendingRuleChanges.set(true);
                     pendingDataChanges.set(true);
                     pendingChanges.add(change);
+                    aboxVocabulary = null;
                 }
                 if (change.isAxiomChange()) {
                     pendingChanges.add(change);
+                    // An addition and removal of the same axiom cancel out
                     if (change.isAddAxiom()) {
-                        pendingAxiomAdditions.add(change.getAxiom());
+                        if (!pendingAxiomRemovals.remove(change.getAxiom())) pendingAxiomAdditions.add(change.getAxiom());
                     } else if (change.isRemoveAxiom()) {
-                        pendingAxiomRemovals.add(change.getAxiom());
-                    }
-                    if (change.getAxiom().isOfType(AxiomType.TBoxAndRBoxAxiomTypes)) {
-                        pendingRuleChanges.set(true);
-                        pendingDataChanges.set(true);
-                    } else if (change.getAxiom().isOfType(AxiomType.ABoxAxiomTypes)) {
-                        pendingDataChanges.set(true);
+                        if (!pendingAxiomAdditions.remove(change.getAxiom())) pendingAxiomRemovals.add(change.getAxiom());
                     }
                 }
             }
@@ -82,14 +130,36 @@ public class ArachneProtegeReasoner implements OWLReasoner {
     };
 
     public ArachneProtegeReasoner(OWLOntology ontology, BufferingMode bufferingMode, OWLReasonerConfiguration config) {
+        this(ontology, bufferingMode, config, new ReasonerMetrics());
+    }
+
+    /**
+     * @param metrics where to record phase timings and query latencies, possibly shared with other reasoners
+     */
+    public ArachneProtegeReasoner(OWLOntology ontology, BufferingMode bufferingMode, OWLReasonerConfiguration config, ReasonerMetrics metrics) {
+        this(ontology, bufferingMode, config, metrics, null);
+    }
+
+    /**
+     * @param engines cache through which reasoners over the same Tbox share a compiled rule engine, or null for a private engine
+     */
+    ArachneProtegeReasoner(OWLOntology ontology, BufferingMode bufferingMode, OWLReasonerConfiguration config, ReasonerMetrics metrics, EngineCache engines) {
         this.ontology = ontology;
+        this.engines = engines;
+        this.metrics = metrics;
         this.bufferingMode = bufferingMode;
-        this.config = config;
+        this.config = ArachneReasonerConfiguration.from(config);
+        this.queryCache = new QueryCache(this.config.getQueryCacheSize(), metrics);
+        this.ruleCache = this.config.getRuleCacheDirectory() != null ? new RuleCache(this.config.getRuleCacheDirectory()) : null;
+        this.materializations = this.config.getMaterializationDirectory() != null ?
+                new MaterializationStore(this.config.getMaterializationDirectory(), this.config.getMaterializationCacheSize(),
+                        this.config.getMaterializationDirectoryLimit()) : null;
         if (config.getProgressMonitor() != null) {
             this.monitor = config.getProgressMonitor();
         } else {
             this.monitor = new NullReasonerProgressMonitor();
         }
+        this.tbox = new TboxHierarchy(ontology);
         ontology.getOWLOntologyManager().addOntologyChangeListener(changeListener);
         flush();
     }
@@ -97,64 +167,630 @@ public class ArachneProtegeReasoner implements OWLReasoner {
     @Override
     public void dispose() {
         ontology.getOWLOntologyManager().removeOntologyChangeListener(changeListener);
+        ExecutorService executor;
+        synchronized (this) {
+            executor = realizationExecutor;
+        }
+        if (executor != null) {
+            // Stop a background realization before the engine it uses is released
+            interruptRequested.set(true);
+            for (Runnable queued : executor.shutdownNow()) {
+                // Wakes any thread awaiting a realization which will not run
+                if (queued instanceof Future) ((Future<?>) queued).cancel(false);
+            }
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    if (executor.awaitTermination(1, TimeUnit.MINUTES)) break;
+                    logger.warn("Still waiting for the background realization to stop");
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            if (componentPool != null) componentPool.shutdownNow();
+        }
+        if (ruleCachePending) {
+            ruleCache.store(ruleFingerprint, ruleTranslator.translations(), ruleCacheKey);
+            ruleCacheKey = ruleFingerprint;
+            ruleCachePending = false;
+        }
+        if (materializationPending && realizer != null) {
+            // The incremental changes since the last full realization were not stored
+            store(materializationKey(realizer.asserted()), snapshot.facts);
+        }
+        if (engineKey != null) {
+            engines.release(engineKey);
+            engineKey = null;
+        }
     }
 
     @Override
     public void flush() {
-        if (structuralReasoner == null) {
-            monitor.reasonerTaskStarted("Creating structural reasoner for Tbox");
-            monitor.reasonerTaskBusy();
-            this.structuralReasoner = new StructuralReasonerFactory().createReasoner(ontology);
-            this.structuralReasoner.flush();
-            monitor.reasonerTaskStopped();
+        long start = System.nanoTime();
+        if (pendingChanges.stream().anyMatch(OWLOntologyChange::isImportChange)) {
+            tbox.reload();
         } else {
-            monitor.reasonerTaskStarted("Flushing structural reasoner");
-            monitor.reasonerTaskBusy();
-            this.structuralReasoner.flush();
-            monitor.reasonerTaskStopped();
+            for (OWLAxiom axiom : pendingAxiomAdditions) {
+                tbox.apply(axiom, true);
+            }
+            for (OWLAxiom axiom : pendingAxiomRemovals) {
+                tbox.apply(axiom, false);
+            }
         }
+        synchronized (this) {
+            if (!pendingChanges.isEmpty()) structuralReasonerStale = true;
+        }
+        metrics.phase(ReasonerMetrics.HIERARCHY_UPDATE, start);
+        final Set<OWLAxiom> additions = new HashSet<>(pendingAxiomAdditions);
+        final Set<OWLAxiom> removals = new HashSet<>(pendingAxiomRemovals);
         pendingAxiomAdditions.clear();
         pendingAxiomRemovals.clear();
         pendingChanges.clear();
-        if (pendingRuleChanges.getAndSet(false)) {
-            monitor.reasonerTaskStarted("Converting Tbox to rules");
+        boolean rulesChanged = pendingRuleChanges.getAndSet(false);
+        boolean dataChanged = pendingDataChanges.getAndSet(false);
+        int ruleAxiomChanges = 0;
+        for (Set<OWLAxiom> changed : Arrays.asList(additions, removals)) {
+            for (OWLAxiom axiom : changed) {
+                if (axiom.isOfType(AxiomType.TBoxAndRBoxAxiomTypes)) {
+                    deferredRuleAxioms.add(axiom);
+                    ruleAxiomChanges++;
+                } else if (axiom.isOfType(AxiomType.ABoxAxiomTypes)) {
+                    dataChanged = true;
+                    if (aboxVocabulary != null && changed == additions) RuleReachability.addVocabulary(axiom, aboxVocabulary);
+                }
+            }
+        }
+        if (!rulesChanged && !deferredRuleAxioms.isEmpty()) {
+            // The Abox is only re-realized if the translated rule set actually changes
+            rulesChanged = deferredRulesReachable();
+            if (!rulesChanged) metrics.count(ReasonerMetrics.RULE_CHANGES_DEFERRED, ruleAxiomChanges);
+        }
+        if (rulesChanged) deferredRuleAxioms.clear();
+        if (!rulesChanged && !dataChanged) return;
+        FlushRequest request = captureRequest(rulesChanged, dataChanged, additions, removals);
+        if (config.isAsynchronousFlush()) {
+            lastRealization = realizationExecutor().submit(() -> realize(request));
+        } else {
+            realize(request);
+        }
+    }
+
+    /**
+     * @return the structural reasoner, flushed with the changes since its last use
+     */
+    private synchronized OWLReasoner structuralReasoner() {
+        if (structuralReasoner == null || structuralReasonerStale) {
+            long start = System.nanoTime();
+            monitor.reasonerTaskStarted("Flushing structural reasoner");
             monitor.reasonerTaskBusy();
-            scala.collection.Iterable<Rule> rules = Bridge.rulesFromJena(
-                    ((GenSet<org.apache.jena.reasoner.rulesys.Rule>) (OWLtoRules.translate(ontology, Imports.INCLUDED, true, true, false, true)))
-                            .union(OWLtoRules.indirectRules(ontology)).seq());
+            if (structuralReasoner == null) structuralReasoner = new StructuralReasonerFactory().createReasoner(ontology);
+            structuralReasoner.flush();
+            structuralReasonerStale = false;
             monitor.reasonerTaskStopped();
-            monitor.reasonerTaskStarted("Constructing rule engine from rules");
-            monitor.reasonerTaskBusy();
-            arachne = new RuleEngine(rules, true);
+            metrics.phase(ReasonerMetrics.STRUCTURAL_FLUSH, start);
+        }
+        return structuralReasoner;
+    }
+
+    /**
+     * @return true if a Tbox or Rbox change not yet applied to the rule set could change the realized Abox,
+     * given the classes and properties reachable from the Abox through the current rules
+     */
+    private boolean deferredRulesReachable() {
+        CompiledRules current = compiled;
+        Future<?> pending = lastRealization;
+        // The rule set may be about to change
+        if (current == null || (pending != null && !pending.isDone())) return true;
+        Set<URI> reachable = current.reachability.reachable(aboxVocabulary());
+        return deferredRuleAxioms.stream().anyMatch(axiom -> RuleReachability.isRelevant(axiom, reachable));
+    }
+
+    /**
+     * @return classes and properties used by Abox axioms of the imports closure, including any since removed
+     */
+    private Set<URI> aboxVocabulary() {
+        if (aboxVocabulary == null) {
+            aboxVocabulary = new HashSet<>();
+            for (OWLAxiom axiom : ontology.getABoxAxioms(Imports.INCLUDED)) {
+                RuleReachability.addVocabulary(axiom, aboxVocabulary);
+            }
+        }
+        return aboxVocabulary;
+    }
+
+    /**
+     * Reads everything realization needs from the ontology on the calling thread.
+     */
+    private FlushRequest captureRequest(boolean rulesChanged, boolean dataChanged, Set<OWLAxiom> additions, Set<OWLAxiom> removals) {
+        final Set<OWLAxiom> ruleAxioms;
+        final Set<Rule> indirectRules;
+        if (rulesChanged) {
+            ruleAxioms = RuleTranslator.ruleAxioms(ontology);
+            indirectRules = config.isIndirectTypeRules() ? RuleTranslator.indirectRules(ontology) : Collections.emptySet();
+        } else {
+            ruleAxioms = null;
+            indirectRules = null;
+        }
+        long start = System.nanoTime();
+        Set<Triple> addedTriples = new HashSet<>();
+        for (OWLAxiom axiom : additions) {
+            Triple triple = ontology.containsAxiom(axiom) ? bridge.triple(axiom) : null;
+            if (triple != null) addedTriples.add(triple);
+        }
+        metrics.count(ReasonerMetrics.TRIPLES_CONVERTED, addedTriples.size());
+        metrics.phase(ReasonerMetrics.TRIPLE_CONVERSION, start);
+        final Supplier<Collection<OWLAxiom>> assertions;
+        CompiledRules rules = compiled;
+        if (config.isAsynchronousFlush() && !rulesChanged && config.isIncrementalRealization() && realizer != null
+                && rules != null && (!config.isAboxRulePruning() || rules.covers(aboxVocabulary()))) {
+            // The changes are pushed into the working memories, so the whole Abox need not be copied
+            assertions = null;
+        } else if (config.isAsynchronousFlush()) {
+            List<OWLAxiom> captured = new ArrayList<>(ontology.getAxioms(AxiomType.OBJECT_PROPERTY_ASSERTION));
+            captured.addAll(ontology.getAxioms(AxiomType.CLASS_ASSERTION));
+            assertions = () -> captured;
+        } else {
+            assertions = () -> {
+                List<OWLAxiom> current = new ArrayList<>(ontology.getAxioms(AxiomType.OBJECT_PROPERTY_ASSERTION));
+                current.addAll(ontology.getAxioms(AxiomType.CLASS_ASSERTION));
+                return current;
+            };
+        }
+        Set<URI> vocabulary = config.isAboxRulePruning() ? new HashSet<>(aboxVocabulary()) : null;
+        // With indirect type rules, direct types are marked by facts rather than computed from the hierarchy
+        HierarchyIndex.View<OWLClass> classes = config.isIndirectTypeRules() ? HierarchyIndex.View.empty() : tbox.classes.view();
+        return new FlushRequest(ruleAxioms, indirectRules, dataChanged, retractedTriples(removals), addedTriples, assertions, vocabulary, classes);
+    }
+
+    private synchronized ExecutorService realizationExecutor() {
+        if (realizationExecutor == null) {
+            realizationExecutor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "arachne-realization");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return realizationExecutor;
+    }
+
+    /**
+     * @return the pool for realizing Abox components concurrently, or null if realization is sequential
+     */
+    private synchronized ForkJoinPool componentPool() {
+        if (!config.isAboxPartitioning() || config.getRealizationParallelism() <= 1) return null;
+        if (componentPool == null) componentPool = new ForkJoinPool(config.getRealizationParallelism());
+        return componentPool;
+    }
+
+    /**
+     * Runs rule translation and Abox realization for a flush, then publishes a new snapshot.
+     * Only one realization runs at a time, either on the flushing thread or on the background executor.
+     */
+    private void realize(FlushRequest request) {
+        RealizationGuard guard = new RealizationGuard(interruptRequested, getTimeOut(), config.getMaxFacts(), config.isStopAtFirstClash());
+        TaskProgress progress = new TaskProgress(monitor);
+        boolean rebuilt = false;
+        try {
+            if (request.rulesChanged()) {
+                String fingerprint = ruleCache != null || materializations != null || engines != null ? RuleCache.fingerprint(request.ruleAxioms, config.isIndirectTypeRules()) : null;
+                ruleFingerprint = fingerprint;
+                if (engines != null) {
+                    // Reasoners over the same Tbox share one engine, and only the first of them translates it
+                    String key = EngineCache.key(fingerprint, request.aboxVocabulary);
+                    if (!key.equals(engineKey)) {
+                        CompiledRules current = compiled;
+                        boolean[] translated = {false};
+                        CompiledRules shared = engines.acquire(key, () -> {
+                            translated[0] = true;
+                            boolean changed = translate(ruleTranslator, request, fingerprint, guard, progress);
+                            if (!changed && current != null && (request.aboxVocabulary == null || current.covers(request.aboxVocabulary))) return current;
+                            return compileEngine(ruleTranslator, request.aboxVocabulary, guard);
+                        });
+                        if (engineKey != null) engines.release(engineKey);
+                        engineKey = key;
+                        if (!translated[0]) {
+                            // Later Tbox edits are translated starting from the rules of the shared engine
+                            ruleTranslator = new RuleTranslator(false);
+                            ruleTranslator.restore(shared.translations);
+                            ruleCachePending = false;
+                        }
+                        if (shared != current) {
+                            compiled = shared;
+                            realizer = null;
+                            rebuilt = true;
+                        }
+                    }
+                } else {
+                    boolean changed = translate(ruleTranslator, request, fingerprint, guard, progress);
+                    if (changed || compiled == null) {
+                        compiled = null;
+                        compiled = compileEngine(ruleTranslator, request.aboxVocabulary, guard);
+                        realizer = null;
+                        rebuilt = true;
+                    }
+                }
+            }
+            CompiledRules current = compiled;
+            if (!rebuilt && request.aboxVocabulary != null && current != null && !current.covers(request.aboxVocabulary)) {
+                // The Abox uses vocabulary which may fire rules left out of the engine
+                guard.check();
+                if (engines != null) {
+                    String key = EngineCache.key(ruleFingerprint, request.aboxVocabulary);
+                    CompiledRules pruned = engines.acquire(key, () -> prune(current, request.aboxVocabulary));
+                    engines.release(engineKey);
+                    engineKey = key;
+                    compiled = pruned;
+                } else {
+                    compiled = prune(current, request.aboxVocabulary);
+                }
+                realizer = null;
+                rebuilt = true;
+            }
+            // Asserted triples share their predicates and classes with the engine's patterns
+            if (rebuilt) bridge.intern(compiled.reachability.bodyTerms());
+            if (request.dataChanged || rebuilt) {
+                if (realizer != null && config.isIncrementalRealization()) {
+                    if (!request.addedTriples.isEmpty() || !request.removedTriples.isEmpty()) {
+                        monitor.reasonerTaskStarted("Incrementally realizing Abox");
+                        long start = System.nanoTime();
+                        realizer.update(request.addedTriples, request.removedTriples, guard, progress);
+                        metrics.phase(ReasonerMetrics.PROCESS_TRIPLES, start);
+                        guard.check();
+                        monitor.reasonerTaskBusy();
+                        // Stored on dispose or the next full realization rather than after every change
+                        publish(realizer.facts(), null, request.classes);
+                        materializationPending = materializations != null;
+                        monitor.reasonerTaskStopped();
+                    }
+                } else if (request.assertions == null) {
+                    // Captured for an incremental update, but the working memories have been dropped since by a
+                    // failed realization; the changes stay pending and the next flush realizes the whole Abox
+                    pendingDataChanges.set(true);
+                    logger.info("Abox changes left for the next flush, which realizes the whole Abox");
+                } else {
+                    monitor.reasonerTaskStarted("Realizing Abox");
+                    long start = System.nanoTime();
+                    Collection<OWLAxiom> assertions = request.assertions.get();
+                    progress.begin(assertions.size());
+                    // Sized up front so the set is not rehashed while filled
+                    Set<Triple> triples = new HashSet<>(assertions.size() * 4 / 3 + 1);
+                    for (OWLAxiom axiom : assertions) {
+                        Triple triple = bridge.triple(axiom);
+                        if (triple != null) triples.add(triple);
+                        progress.advance();
+                    }
+                    metrics.phase(ReasonerMetrics.TRIPLE_CONVERSION, start);
+                    metrics.count(ReasonerMetrics.TRIPLES_CONVERTED, triples.size());
+                    String key = materializationKey(triples);
+                    FactStore stored = key != null ? materializations.load(key) : null;
+                    if (stored != null) {
+                        // The stored realization has no working memory, so the next Abox change is realized in full
+                        realizer = null;
+                        guard.countFacts(stored.size());
+                        metrics.count(ReasonerMetrics.MATERIALIZATIONS_REUSED, 1);
+                        if (!key.equals(materializationKey)) {
+                            if (materializationKey != null) materializations.delete(materializationKey);
+                            materializationKey = key;
+                        }
+                        materializationPending = false;
+                        publish(stored, request.classes);
+                    } else {
+                        start = System.nanoTime();
+                        CompiledRules rules = compiled;
+                        realizer = new AboxRealizer(rules.engine, componentPool(), rules.derivesSameAs, rules.constants,
+                                config.isAboxPartitioning() ? rules.links() : null);
+                        realizer.realizeAll(triples, guard, progress);
+                        metrics.phase(ReasonerMetrics.PROCESS_TRIPLES, start);
+                        guard.check();
+                        monitor.reasonerTaskBusy();
+                        publish(realizer.facts(), key, request.classes);
+                        // Without incremental realization the working memories are never reused, so don't hold the facts twice
+                        if (!config.isIncrementalRealization()) realizer = null;
+                    }
+                    monitor.reasonerTaskStopped();
+                }
+            }
+        } catch (RuntimeException e) {
+            // The working memories may be partially updated; the next realization starts from scratch.
+            // Queries keep using the previous snapshot, and the changes stay pending for the next flush.
+            realizer = null;
+            if (request.rulesChanged() && !rebuilt) {
+                // The translator may already reflect the new Tbox, so force the engine to be rebuilt
+                compiled = null;
+                if (engineKey != null) {
+                    engines.release(engineKey);
+                    engineKey = null;
+                }
+                pendingRuleChanges.set(true);
+            }
+            pendingDataChanges.set(true);
             monitor.reasonerTaskStopped();
+            if (!guard.clashes().isEmpty()) {
+                // Stopped at the first clash: the Abox is inconsistent however the realization would have ended
+                publishInconsistent(guard.clashes());
+                logger.info("Realization stopped at an inconsistency; other queries continue to use the previous facts");
+                return;
+            }
+            if (e instanceof ReasonerInterruptedException || e instanceof TimeOutException) {
+                logger.warn("Realization aborted; queries continue to use generation " + snapshot.generation + ": " + e.getMessage());
+            } else {
+                logger.error("Realization failed; queries continue to use generation " + snapshot.generation, e);
+            }
+            throw e;
+        } finally {
+            // An interrupt requested before the realization started applies to it, and ends with it
+            interruptRequested.set(false);
         }
-        if (pendingDataChanges.getAndSet(false)) {
-            monitor.reasonerTaskStarted("Realizing Abox");
+    }
+
+    /**
+     * @return key of the realization of the asserted triples in the materialization store, or null if there is no store
+     */
+    private String materializationKey(Iterable<Triple> asserted) {
+        return materializations != null ? MaterializationStore.key(ruleFingerprint, asserted) : null;
+    }
+
+    /**
+     * Brings the translator in line with the Tbox of the request, seeding it from the rule cache if it is empty.
+     *
+     * @param fingerprint Tbox fingerprint, required if there is a rule cache
+     * @return true if the rule set changed
+     */
+    private boolean translate(RuleTranslator translator, FlushRequest request, String fingerprint, RealizationGuard guard, TaskProgress progress) {
+        if (ruleCache != null && translator.isEmpty()) {
+            monitor.reasonerTaskStarted("Loading cached Tbox rules");
             monitor.reasonerTaskBusy();
-            model.removeAll();
-            Set<Triple> triples = ontology.getAxioms(AxiomType.OBJECT_PROPERTY_ASSERTION).stream().map(axiom -> asTriple(axiom)).collect(Collectors.toSet());
-            triples.addAll(ontology.getAxioms(AxiomType.CLASS_ASSERTION).stream().flatMap(axiom -> asTriple(axiom).stream()).collect(Collectors.toSet()));
-            WorkingMemory wm = arachne.processTriples(JavaConverters.asScalaSet(triples));
-            for (Triple triple : JavaConverters.setAsJavaSet(wm.facts())) {
-                model.add(model.asStatement(Bridge.jenaFromTriple(triple)));
+            Map<String, List<Rule>> cached = ruleCache.load(fingerprint);
+            if (cached != null) {
+                translator.restore(cached);
+                ruleCacheKey = fingerprint;
             }
             monitor.reasonerTaskStopped();
         }
+        monitor.reasonerTaskStarted("Converting Tbox to rules");
+        long start = System.nanoTime();
+        boolean changed = translator.synchronize(request.ruleAxioms, request.indirectRules, guard, progress);
+        metrics.phase(ReasonerMetrics.RULE_TRANSLATION, start);
+        metrics.count(ReasonerMetrics.AXIOMS_TRANSLATED, translator.translatedCount());
+        if (ruleCache != null && translator.translatedCount() > 0) {
+            if (ruleCacheKey == null) {
+                ruleCache.store(fingerprint, translator.translations(), null);
+                ruleCacheKey = fingerprint;
+            } else {
+                // Edits are stored on dispose, rather than an entry for each intermediate Tbox
+                ruleCachePending = true;
+            }
+        }
+        monitor.reasonerTaskStopped();
+        return changed;
+    }
+
+    /**
+     * @param vocabulary Abox vocabulary to prune the engine to, or null for every rule
+     */
+    private CompiledRules compileEngine(RuleTranslator translator, Set<URI> vocabulary, RealizationGuard guard) {
+        guard.check();
+        monitor.reasonerTaskStarted("Constructing rule engine from rules");
+        monitor.reasonerTaskBusy();
+        long start = System.nanoTime();
+        List<Rule> translated = translator.rules();
+        CompiledRules rules = new CompiledRules(translated, vocabulary, engines != null ? translator.translations() : null);
+        metrics.phase(ReasonerMetrics.ENGINE_CONSTRUCTION, start);
+        metrics.count(ReasonerMetrics.RULES_COMPILED, rules.ruleCount);
+        metrics.count(ReasonerMetrics.RULES_PRUNED, translated.size() - rules.ruleCount);
+        monitor.reasonerTaskStopped();
+        return rules;
+    }
+
+    private CompiledRules prune(CompiledRules rules, Set<URI> vocabulary) {
+        monitor.reasonerTaskStarted("Constructing rule engine for new Abox vocabulary");
+        monitor.reasonerTaskBusy();
+        long start = System.nanoTime();
+        CompiledRules pruned = rules.prune(vocabulary);
+        metrics.phase(ReasonerMetrics.ENGINE_CONSTRUCTION, start);
+        metrics.count(ReasonerMetrics.RULES_COMPILED, pruned.ruleCount);
+        monitor.reasonerTaskStopped();
+        return pruned;
+    }
+
+    private void publish(Iterable<Triple> realized, String key, HierarchyIndex.View<OWLClass> classes) {
+        long start = System.nanoTime();
+        FactStore facts = FactStore.build(realized);
+        metrics.phase(ReasonerMetrics.SNAPSHOT_BUILD, start);
+        if (key != null) facts = store(key, facts);
+        publish(facts, classes);
+    }
+
+    /**
+     * Writes the facts to the materialization store, replacing the previous realization stored by this reasoner.
+     *
+     * @return the stored facts
+     */
+    private FactStore store(String key, FactStore facts) {
+        long start = System.nanoTime();
+        FactStore stored = materializations.store(key, facts, materializationKey);
+        metrics.phase(ReasonerMetrics.MATERIALIZATION_STORE, start);
+        materializationKey = key;
+        materializationPending = false;
+        return stored;
+    }
+
+    private void publish(FactStore facts, HierarchyIndex.View<OWLClass> classes) {
+        metrics.count(ReasonerMetrics.FACTS_PUBLISHED, facts.size());
+        Set<OWLNamedIndividual> inconsistent = individuals(facts, facts.expand(facts.subjects(RDF_TYPE, OWL_NOTHING)));
+        synchronized (snapshotLock) {
+            // Inference types requested once are kept for later snapshots, whose answers are computed as individuals
+            // are looked up rather than for every individual on each publish; they count as precomputed once filled
+            PrecomputedInferences precomputed = precomputation(facts, classes, requestedPrecomputation);
+            snapshot = new RealizationSnapshot(snapshot.generation + 1, facts, classes, precomputed, inconsistent);
+        }
+    }
+
+    /**
+     * Publishes the previous facts, marked as inconsistent because of the given individuals.
+     * The generation is unchanged, as answers computed from the facts remain valid.
+     */
+    private void publishInconsistent(Set<Resource> clashes) {
+        Set<OWLNamedIndividual> inconsistent = new HashSet<>();
+        synchronized (clashes) {
+            for (Resource individual : clashes) {
+                if (individual instanceof URI) inconsistent.add(factory.getOWLNamedIndividual(IRI.create(((URI) individual).uri())));
+            }
+        }
+        synchronized (snapshotLock) {
+            RealizationSnapshot current = snapshot;
+            snapshot = new RealizationSnapshot(current.generation, current.facts, current.classes, current.precomputed, inconsistent);
+        }
+    }
+
+    /**
+     * @return the current snapshot, recording its generation as the one answering the calling thread's query
+     */
+    private RealizationSnapshot snapshot() {
+        RealizationSnapshot current = snapshot;
+        queryGeneration.get()[0] = current.generation;
+        return current;
+    }
+
+    private FactStore facts() {
+        return snapshot().facts;
+    }
+
+    /**
+     * @return the generation of the most recently completed realization
+     */
+    public long getGeneration() {
+        return snapshot.generation;
+    }
+
+    /**
+     * @return the generation of the realization which answered the calling thread's most recent Abox query
+     */
+    public long getLastQueryGeneration() {
+        return queryGeneration.get()[0];
+    }
+
+    public ReasonerMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Streams the inferred class assertions of all named individuals in one pass over the current snapshot,
+     * rather than one {@link #getTypes(OWLNamedIndividual, boolean)} call per individual.
+     *
+     * @param direct if true, only direct types are included
+     */
+    public Stream<OWLClassAssertionAxiom> getInferredClassAssertions(boolean direct) {
+        RealizationSnapshot current = snapshot();
+        FactStore facts = current.facts;
+        int rdfType = facts.id(RDF_TYPE);
+        int namedIndividual = facts.id(OWL_NAMED_INDIVIDUAL);
+        return individualIds(facts).boxed().flatMap(subject -> {
+            int representative = facts.representative(subject);
+            int[] types = facts.objects(representative, rdfType);
+            if (direct) types = directTypes(facts, current.classes, representative, types);
+            if (types.length == 0) return Stream.empty();
+            OWLNamedIndividual individual = factory.getOWLNamedIndividual(IRI.create(((URI) facts.term(subject)).uri()));
+            return Arrays.stream(types)
+                    .filter(type -> type != namedIndividual && facts.term(type) instanceof URI)
+                    .mapToObj(type -> factory.getOWLClassAssertionAxiom(factory.getOWLClass(IRI.create(((URI) facts.term(type)).uri())), individual));
+        });
+    }
+
+    /**
+     * Streams the inferred object property assertions between named individuals in one pass over the current snapshot,
+     * rather than one {@link #getObjectPropertyValues(OWLNamedIndividual, OWLObjectPropertyExpression)} call per
+     * individual and property.
+     */
+    public Stream<OWLObjectPropertyAssertionAxiom> getInferredObjectPropertyAssertions() {
+        FactStore facts = facts();
+        Set<Integer> excluded = new HashSet<>(Arrays.asList(facts.id(RDF_TYPE), facts.id(INDIRECT_TYPE), facts.id(OWL_SAME_AS), facts.id(OWL_DIFFERENT_FROM)));
+        return individualIds(facts).boxed().flatMap(subject -> {
+            OWLNamedIndividual individual = factory.getOWLNamedIndividual(IRI.create(((URI) facts.term(subject)).uri()));
+            int representative = facts.representative(subject);
+            return Arrays.stream(facts.predicates(representative)).boxed()
+                    .filter(predicate -> !excluded.contains(predicate) && facts.term(predicate) instanceof URI)
+                    .flatMap(predicate -> {
+                        OWLObjectProperty property = factory.getOWLObjectProperty(IRI.create(((URI) facts.term(predicate)).uri()));
+                        return Arrays.stream(facts.expand(facts.objects(representative, predicate)))
+                                .filter(object -> facts.term(object) instanceof URI)
+                                .mapToObj(object -> factory.getOWLObjectPropertyAssertionAxiom(property, individual,
+                                        factory.getOWLNamedIndividual(IRI.create(((URI) facts.term(object)).uri()))));
+                    });
+        });
+    }
+
+    /**
+     * @return IDs of the named terms with at least one fact as subject
+     */
+    private static IntStream individualIds(FactStore facts) {
+        return IntStream.range(0, facts.termCount())
+                .filter(id -> facts.isSubject(id) && facts.term(id) instanceof URI);
+    }
+
+    /**
+     * Waits for any background realization started by {@link #flush()} to complete.
+     *
+     * @return false if the timeout elapsed first
+     */
+    public boolean awaitRealization(long timeout, TimeUnit unit) throws InterruptedException {
+        Future<?> pending = lastRealization;
+        if (pending == null) return true;
+        try {
+            pending.get(timeout, unit);
+        } catch (ExecutionException e) {
+            // Already logged by the realization task
+        } catch (TimeoutException e) {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * The rule engine can only grow its working memory. Any asserted triple of a removed axiom which is
+     * no longer supported by the ontology requires the facts of its component to be rebuilt from scratch.
+     */
+    private Set<Triple> retractedTriples(Set<OWLAxiom> removals) {
+        Set<Triple> retracted = new HashSet<>();
+        for (OWLAxiom axiom : removals) {
+            if (ontology.containsAxiom(axiom)) continue;
+            Triple triple = bridge.triple(axiom);
+            if (triple != null && !isStillAsserted(triple, axiom)) retracted.add(triple);
+        }
+        return retracted;
+    }
+
+    /**
+     * The same triple may be asserted by more than one axiom, e.g. axioms differing only in annotations
+     * or an assertion using the inverse property.
+     */
+    private boolean isStillAsserted(Triple triple, OWLAxiom removed) {
+        if (removed instanceof OWLClassAssertionAxiom) {
+            return ontology.getClassAssertionAxioms(((OWLClassAssertionAxiom) removed).getIndividual()).stream()
+                    .anyMatch(ax -> triple.equals(bridge.triple(ax)));
+        } else if (removed instanceof OWLObjectPropertyAssertionAxiom) {
+            OWLObjectPropertyAssertionAxiom assertion = (OWLObjectPropertyAssertionAxiom) removed;
+            return ontology.getObjectPropertyAssertionAxioms(assertion.getSubject()).stream().anyMatch(ax -> triple.equals(bridge.triple(ax))) ||
+                    ontology.getObjectPropertyAssertionAxioms(assertion.getObject()).stream().anyMatch(ax -> triple.equals(bridge.triple(ax)));
+        } else return false;
     }
 
     @Override
     public Node<OWLClass> getBottomClassNode() {
-        return structuralReasoner.getBottomClassNode();
+        return timed("getBottomClassNode", () -> tbox.classes.bottomNode());
     }
 
     @Override
     public Node<OWLDataProperty> getBottomDataPropertyNode() {
-        return structuralReasoner.getBottomDataPropertyNode();
+        return timed("getBottomDataPropertyNode", () -> tbox.dataProperties.bottomNode());
     }
 
     @Override
     public Node<OWLObjectPropertyExpression> getBottomObjectPropertyNode() {
-        return structuralReasoner.getBottomObjectPropertyNode();
+        return timed("getBottomObjectPropertyNode", () -> tbox.objectProperties.bottomNode());
     }
 
     @Override
@@ -164,55 +800,50 @@ public class ArachneProtegeReasoner implements OWLReasoner {
 
     @Override
     public NodeSet<OWLClass> getDataPropertyDomains(OWLDataProperty arg0, boolean arg1) {
-        return structuralReasoner.getDataPropertyDomains(arg0, arg1);
+        return timed("getDataPropertyDomains", () -> structuralReasoner().getDataPropertyDomains(arg0, arg1));
     }
 
     @Override
     public Set<OWLLiteral> getDataPropertyValues(OWLNamedIndividual arg0, OWLDataProperty arg1) {
-        return structuralReasoner.getDataPropertyValues(arg0, arg1);
+        return timed("getDataPropertyValues", () -> structuralReasoner().getDataPropertyValues(arg0, arg1));
     }
 
     @Override
     public NodeSet<OWLNamedIndividual> getDifferentIndividuals(OWLNamedIndividual ind) {
-        String query = "PREFIX owl: <http://www.w3.org/2002/07/owl#> " +
-                "SELECT DISTINCT ?o WHERE { " +
-                "<" + ind.getIRI() + "> owl:differentFrom ?o . " +
-                "FILTER(isIRI(?o))" +
-                "}";
-        return new OWLNamedIndividualNodeSet(
-                executeSelect(query).stream().map(
-                        qs -> NodeFactory.getOWLNamedIndividualNode(factory.getOWLNamedIndividual(IRI.create(qs.getResource("o").getURI()))))
-                        .collect(Collectors.toSet()));
+        return timed("getDifferentIndividuals", () -> {
+            RealizationSnapshot current = snapshot();
+            return queryCache.get(current.generation, () -> differentIndividuals(current.facts, ind), "getDifferentIndividuals", ind);
+        });
     }
 
     @Override
     public NodeSet<OWLClass> getDisjointClasses(OWLClassExpression arg0) {
-        return structuralReasoner.getDisjointClasses(arg0);
+        return timed("getDisjointClasses", () -> structuralReasoner().getDisjointClasses(arg0));
     }
 
     @Override
     public NodeSet<OWLDataProperty> getDisjointDataProperties(OWLDataPropertyExpression arg0) {
-        return structuralReasoner.getDisjointDataProperties(arg0);
+        return timed("getDisjointDataProperties", () -> structuralReasoner().getDisjointDataProperties(arg0));
     }
 
     @Override
     public NodeSet<OWLObjectPropertyExpression> getDisjointObjectProperties(OWLObjectPropertyExpression arg0) {
-        return structuralReasoner.getDisjointObjectProperties(arg0);
+        return timed("getDisjointObjectProperties", () -> structuralReasoner().getDisjointObjectProperties(arg0));
     }
 
     @Override
     public Node<OWLClass> getEquivalentClasses(OWLClassExpression arg0) {
-        return structuralReasoner.getEquivalentClasses(arg0);
+        return timed("getEquivalentClasses", () -> arg0.isAnonymous() ? structuralReasoner().getEquivalentClasses(arg0) : tbox.classes.equivalents(arg0.asOWLClass()));
     }
 
     @Override
     public Node<OWLDataProperty> getEquivalentDataProperties(OWLDataProperty arg0) {
-        return structuralReasoner.getEquivalentDataProperties(arg0);
+        return timed("getEquivalentDataProperties", () -> tbox.dataProperties.equivalents(arg0));
     }
 
     @Override
     public Node<OWLObjectPropertyExpression> getEquivalentObjectProperties(OWLObjectPropertyExpression arg0) {
-        return structuralReasoner.getEquivalentObjectProperties(arg0);
+        return timed("getEquivalentObjectProperties", () -> arg0.isAnonymous() ? structuralReasoner().getEquivalentObjectProperties(arg0) : tbox.objectProperties.equivalents(arg0));
     }
 
     @Override
@@ -227,73 +858,35 @@ public class ArachneProtegeReasoner implements OWLReasoner {
 
     @Override
     public NodeSet<OWLNamedIndividual> getInstances(OWLClassExpression ce, boolean direct) {
-        logger.info("Get instances: " + ce + " direct: " + direct);
-        if (ce instanceof OWLObjectHasValue) {
-            OWLObjectHasValue hasValue = (OWLObjectHasValue) ce;
-            if (hasValue.getFiller() instanceof OWLNamedIndividual) {
-                OWLNamedIndividual ind = (OWLNamedIndividual) (hasValue.getFiller());
-                if (hasValue.getProperty() instanceof OWLObjectInverseOf) {
-                    return getObjectPropertyValues(ind, ((OWLObjectInverseOf) hasValue.getProperty()).getInverse());
-                } else {
-                    return getObjectPropertyValues(ind, hasValue.getProperty().getInverseProperty());
-                }
-            } else throw new UnsupportedOperationException();
-        } else if (ce.isAnonymous()) {
-            throw new UnsupportedOperationException();
-        } else {
-            final String query;
-            if (direct) {
-                query = "PREFIX rdf: <http://www.w3.org/1999/02/22-rdf-syntax-ns#> " +
-                        "SELECT DISTINCT ?s WHERE { " +
-                        "?s rdf:type <" + ce.asOWLClass().getIRI() + "> " +
-                        "FILTER(isIRI(?s)) " +
-                        "FILTER NOT EXISTS {?s <" + OWLtoRules.IndirectType() + "> <" + ce.asOWLClass().getIRI() + "> ." + "}" +
-                        "}";
-            } else {
-                query = "PREFIX rdf: <http://www.w3.org/1999/02/22-rdf-syntax-ns#> " +
-                        "SELECT DISTINCT ?s WHERE { " +
-                        "?s rdf:type <" + ce.asOWLClass().getIRI() + "> " +
-                        "FILTER(isIRI(?s)) " +
-                        "}";
-            }
-            return new OWLNamedIndividualNodeSet(
-                    executeSelect(query).stream().map(
-                            qs -> NodeFactory.getOWLNamedIndividualNode(factory.getOWLNamedIndividual(IRI.create(qs.getResource("s").getURI()))))
-                            .collect(Collectors.toSet()));
-        }
+        return timed("getInstances", () -> {
+            RealizationSnapshot current = snapshot();
+            return queryCache.get(current.generation, () -> instances(current.facts, current.classes, ce, direct), "getInstances", ce, direct);
+        });
     }
 
     @Override
     public Node<OWLObjectPropertyExpression> getInverseObjectProperties(OWLObjectPropertyExpression arg0) {
-        return structuralReasoner.getInverseObjectProperties(arg0);
+        return timed("getInverseObjectProperties", () -> structuralReasoner().getInverseObjectProperties(arg0));
     }
 
     @Override
     public NodeSet<OWLClass> getObjectPropertyDomains(OWLObjectPropertyExpression arg0, boolean arg1) {
-        return structuralReasoner.getObjectPropertyDomains(arg0, arg1);
+        return timed("getObjectPropertyDomains", () -> structuralReasoner().getObjectPropertyDomains(arg0, arg1));
     }
 
     @Override
     public NodeSet<OWLClass> getObjectPropertyRanges(OWLObjectPropertyExpression arg0, boolean arg1) {
-        return structuralReasoner.getObjectPropertyRanges(arg0, arg1);
+        return timed("getObjectPropertyRanges", () -> structuralReasoner().getObjectPropertyRanges(arg0, arg1));
     }
 
     @Override
     public NodeSet<OWLNamedIndividual> getObjectPropertyValues(OWLNamedIndividual ind, OWLObjectPropertyExpression pe) {
-        final String predicate;
-        if (pe instanceof OWLObjectInverseOf) {
-            predicate = "^<" + pe.getInverseProperty().asOWLObjectProperty().getIRI() + ">";
-        } else {
-            predicate = "<" + pe.asOWLObjectProperty().getIRI() + ">";
-        }
-        String query = "SELECT DISTINCT ?o WHERE { " +
-                "<" + ind.getIRI() + "> " + predicate + " ?o ." +
-                "FILTER(isIRI(?o)) " +
-                "}";
-        return new OWLNamedIndividualNodeSet(
-                executeSelect(query).stream().map(
-                        qs -> NodeFactory.getOWLNamedIndividualNode(factory.getOWLNamedIndividual(IRI.create(qs.getResource("o").getURI()))))
-                        .collect(Collectors.toSet()));
+        return timed("getObjectPropertyValues", () -> {
+            RealizationSnapshot current = snapshot();
+            NodeSet<OWLNamedIndividual> precomputed = current.precomputed.objectPropertyValues(ind, pe);
+            if (precomputed != null) return precomputed;
+            return queryCache.get(current.generation, () -> objectPropertyValues(current.facts, ind, pe), "getObjectPropertyValues", ind, pe);
+        });
     }
 
     @Override
@@ -313,7 +906,7 @@ public class ArachneProtegeReasoner implements OWLReasoner {
 
     @Override
     public Set<InferenceType> getPrecomputableInferenceTypes() {
-        return Collections.emptySet();
+        return PrecomputedInferences.SUPPORTED;
     }
 
     @Override
@@ -333,125 +926,100 @@ public class ArachneProtegeReasoner implements OWLReasoner {
 
     @Override
     public Node<OWLNamedIndividual> getSameIndividuals(OWLNamedIndividual ind) {
-        String query = "PREFIX owl: <http://www.w3.org/2002/07/owl#> " +
-                "SELECT DISTINCT ?o WHERE { " +
-                "<" + ind.getIRI() + "> owl:sameAs ?o . " +
-                "FILTER(isIRI(?o)) " +
-                "}";
-        return NodeFactory.getOWLNamedIndividualNode(
-                executeSelect(query).stream().map(
-                        qs -> factory.getOWLNamedIndividual(IRI.create(qs.getResource("o").getURI())))
-                        .collect(Collectors.toSet()));
+        return timed("getSameIndividuals", () -> {
+            RealizationSnapshot current = snapshot();
+            Node<OWLNamedIndividual> precomputed = current.precomputed.sameIndividuals(ind);
+            if (precomputed != null) return precomputed;
+            return queryCache.get(current.generation, () -> sameIndividuals(current.facts, current.facts.id(asResource(ind))), "getSameIndividuals", ind);
+        });
     }
 
     @Override
     public NodeSet<OWLClass> getSubClasses(OWLClassExpression arg0, boolean arg1) {
-        return structuralReasoner.getSubClasses(arg0, arg1);
+        return timed("getSubClasses", () -> arg0.isAnonymous() ? structuralReasoner().getSubClasses(arg0, arg1) : tbox.classes.subs(arg0.asOWLClass(), arg1));
     }
 
     @Override
     public NodeSet<OWLDataProperty> getSubDataProperties(OWLDataProperty arg0, boolean arg1) {
-        return structuralReasoner.getSubDataProperties(arg0, arg1);
+        return timed("getSubDataProperties", () -> tbox.dataProperties.subs(arg0, arg1));
     }
 
     @Override
     public NodeSet<OWLObjectPropertyExpression> getSubObjectProperties(OWLObjectPropertyExpression arg0, boolean arg1) {
-        return structuralReasoner.getSubObjectProperties(arg0, arg1);
+        return timed("getSubObjectProperties", () -> arg0.isAnonymous() ? structuralReasoner().getSubObjectProperties(arg0, arg1) : tbox.objectProperties.subs(arg0, arg1));
     }
 
     @Override
     public NodeSet<OWLClass> getSuperClasses(OWLClassExpression arg0, boolean arg1) {
-        return structuralReasoner.getSuperClasses(arg0, arg1);
+        return timed("getSuperClasses", () -> arg0.isAnonymous() ? structuralReasoner().getSuperClasses(arg0, arg1) : tbox.classes.supers(arg0.asOWLClass(), arg1));
     }
 
     @Override
     public NodeSet<OWLDataProperty> getSuperDataProperties(OWLDataProperty arg0, boolean arg1) {
-        return structuralReasoner.getSuperDataProperties(arg0, arg1);
+        return timed("getSuperDataProperties", () -> tbox.dataProperties.supers(arg0, arg1));
     }
 
     @Override
     public NodeSet<OWLObjectPropertyExpression> getSuperObjectProperties(OWLObjectPropertyExpression arg0, boolean arg1) {
-        return structuralReasoner.getSuperObjectProperties(arg0, arg1);
+        return timed("getSuperObjectProperties", () -> arg0.isAnonymous() ? structuralReasoner().getSuperObjectProperties(arg0, arg1) : tbox.objectProperties.supers(arg0, arg1));
     }
 
     @Override
     public long getTimeOut() {
-        return Long.MAX_VALUE;
+        return config.getTimeOut();
     }
 
     @Override
     public Node<OWLClass> getTopClassNode() {
-        return structuralReasoner.getTopClassNode();
+        return timed("getTopClassNode", () -> tbox.classes.topNode());
     }
 
     @Override
     public Node<OWLDataProperty> getTopDataPropertyNode() {
-        return structuralReasoner.getTopDataPropertyNode();
+        return timed("getTopDataPropertyNode", () -> tbox.dataProperties.topNode());
     }
 
     @Override
     public Node<OWLObjectPropertyExpression> getTopObjectPropertyNode() {
-        return structuralReasoner.getTopObjectPropertyNode();
+        return timed("getTopObjectPropertyNode", () -> tbox.objectProperties.topNode());
     }
 
     @Override
     public NodeSet<OWLClass> getTypes(OWLNamedIndividual ind, boolean direct) {
-        final String query;
-        if (direct) {
-            query = "PREFIX rdf: <http://www.w3.org/1999/02/22-rdf-syntax-ns#> " +
-                    "PREFIX rdfs: <http://www.w3.org/2000/01/rdf-schema#> " +
-                    "PREFIX owl: <http://www.w3.org/2002/07/owl#> " +
-                    "SELECT DISTINCT ?o WHERE { " +
-                    "<" + ind.getIRI() + "> rdf:type ?o . " +
-                    "FILTER(isIRI(?o)) " +
-                    "FILTER(?o != owl:NamedIndividual) " +
-                    "FILTER NOT EXISTS { <" + ind.getIRI() + "> <" + OWLtoRules.IndirectType() + "> ?o . } " +
-                    "}";
-
-        } else {
-            query = "PREFIX rdf: <http://www.w3.org/1999/02/22-rdf-syntax-ns#> " +
-                    "PREFIX rdfs: <http://www.w3.org/2000/01/rdf-schema#> " +
-                    "PREFIX owl: <http://www.w3.org/2002/07/owl#> " +
-                    "SELECT DISTINCT ?o WHERE { " +
-                    "<" + ind.getIRI() + "> rdf:type ?o . " +
-                    "FILTER(isIRI(?o)) " +
-                    "FILTER(?o != owl:NamedIndividual) " +
-                    "}";
-        }
-        return new OWLClassNodeSet(
-                executeSelect(query).stream().map(
-                        qs -> NodeFactory.getOWLClassNode(factory.getOWLClass(IRI.create(qs.getResource("o").getURI()))))
-                        .collect(Collectors.toSet()));
+        return timed("getTypes", () -> {
+            RealizationSnapshot current = snapshot();
+            NodeSet<OWLClass> precomputed = current.precomputed.types(ind, direct);
+            if (precomputed != null) return precomputed;
+            return queryCache.get(current.generation, () -> types(current.facts, current.classes, current.facts.id(asResource(ind)), direct), "getTypes", ind, direct);
+        });
     }
 
     @Override
     public Node<OWLClass> getUnsatisfiableClasses() {
-        return structuralReasoner.getUnsatisfiableClasses();
+        return timed("getUnsatisfiableClasses", () -> tbox.classes.bottomNode());
     }
 
     @Override
     public void interrupt() {
-        //FIXME
+        interruptRequested.set(true);
     }
 
     @Override
     public boolean isConsistent() {
-        String query = "PREFIX rdf: <http://www.w3.org/1999/02/22-rdf-syntax-ns#> " +
-                "PREFIX owl: <http://www.w3.org/2002/07/owl#> " +
-                "ASK WHERE { " +
-                "?s rdf:type owl:Nothing . " +
-                "}";
-        return !executeAsk(query);
+        return timed("isConsistent", () -> snapshot().inconsistentIndividuals.isEmpty());
+    }
+
+    /**
+     * @return the named individuals realized as instances of owl:Nothing, which make the ontology inconsistent;
+     * if realization stopped at the first clash, those found up to that point
+     */
+    public Set<OWLNamedIndividual> getInconsistentIndividuals() {
+        return timed("getInconsistentIndividuals", () -> Collections.unmodifiableSet(snapshot().inconsistentIndividuals));
     }
 
     @Override
     public boolean isEntailed(OWLAxiom axiom) {
-        logger.info("Is entailed? " + axiom);
-        if (axiom instanceof OWLClassAssertionAxiom) {
-            return asTriple(((OWLClassAssertionAxiom) axiom)).stream().map(t -> model.asStatement(Bridge.jenaFromTriple(t))).allMatch(s -> model.contains(s));
-        } else if (axiom instanceof OWLObjectPropertyAssertionAxiom) {
-            return model.contains(model.asStatement(Bridge.jenaFromTriple(asTriple((OWLObjectPropertyAssertionAxiom) axiom))));
-        } else return structuralReasoner.isEntailed(axiom);
+        return timed("isEntailed", () -> entailed(axiom));
     }
 
     @Override
@@ -465,12 +1033,148 @@ public class ArachneProtegeReasoner implements OWLReasoner {
     }
 
     @Override
-    public boolean isPrecomputed(InferenceType arg0) {
-        return false;
+    public boolean isPrecomputed(InferenceType inferenceType) {
+        return snapshot.precomputed.isPrecomputed(inferenceType);
     }
 
     @Override
     public boolean isSatisfiable(OWLClassExpression cls) {
+        return timed("isSatisfiable", () -> satisfiable(cls));
+    }
+
+    @Override
+    public void precomputeInferences(InferenceType... inferenceTypes) {
+        synchronized (snapshotLock) {
+            for (InferenceType type : inferenceTypes) {
+                if (PrecomputedInferences.SUPPORTED.contains(type)) requestedPrecomputation.add(type);
+            }
+            RealizationSnapshot current = snapshot;
+            PrecomputedInferences precomputed = current.precomputed;
+            if (!precomputed.precomputedTypes().containsAll(requestedPrecomputation)) {
+                precomputed = precomputation(current.facts, current.classes, requestedPrecomputation);
+                snapshot = new RealizationSnapshot(current.generation, current.facts, current.classes, precomputed, current.inconsistentIndividuals);
+            }
+            fill(precomputed, current.facts);
+        }
+    }
+
+    /**
+     * Runs a query, recording its latency under the name of the reasoner method.
+     */
+    private <T> T timed(String method, Supplier<T> query) {
+        long start = System.nanoTime();
+        try {
+            return query.get();
+        } finally {
+            metrics.query(method, start);
+        }
+    }
+
+    private NodeSet<OWLNamedIndividual> differentIndividuals(FactStore facts, OWLNamedIndividual ind) {
+        return individualNodes(facts, facts.expand(facts.objects(facts.representative(facts.id(asResource(ind))), facts.id(OWL_DIFFERENT_FROM))));
+    }
+
+    /**
+     * Anonymous class expressions are evaluated by a {@link ClassExpressionPlan}; all their instances are returned
+     * whether or not direct instances are asked for.
+     */
+    private NodeSet<OWLNamedIndividual> instances(FactStore facts, HierarchyIndex.View<OWLClass> hierarchy, OWLClassExpression ce, boolean direct) {
+        logger.info("Get instances: " + ce + " direct: " + direct);
+        if (ce.isAnonymous()) {
+            ClassExpressionPlan plan = plan(ce);
+            if (plan == null) throw new UnsupportedOperationException("Unsupported class expression: " + ce);
+            return individualNodes(facts, facts.expand(plan.instances(facts)));
+        } else {
+            URI cls = new URI(ce.asOWLClass().getIRI().toString());
+            int[] instances = facts.subjects(RDF_TYPE, cls);
+            if (direct && config.isIndirectTypeRules()) {
+                instances = FactStore.difference(instances, facts.subjects(INDIRECT_TYPE, cls));
+            } else if (direct) {
+                int rdfType = facts.id(RDF_TYPE);
+                OWLClass type = ce.asOWLClass();
+                instances = Arrays.stream(instances)
+                        .filter(instance -> !hierarchy.subsumesAny(type, classes(facts, facts.objects(instance, rdfType))))
+                        .toArray();
+            }
+            return individualNodes(facts, facts.expand(instances));
+        }
+    }
+
+    private NodeSet<OWLNamedIndividual> objectPropertyValues(FactStore facts, OWLNamedIndividual ind, OWLObjectPropertyExpression pe) {
+        int representative = facts.representative(facts.id(asResource(ind)));
+        if (pe instanceof OWLObjectInverseOf) {
+            int property = facts.id(new URI(pe.getInverseProperty().asOWLObjectProperty().getIRI().toString()));
+            return individualNodes(facts, facts.expand(facts.subjects(property, representative)));
+        } else {
+            int property = facts.id(new URI(pe.asOWLObjectProperty().getIRI().toString()));
+            return individualNodes(facts, facts.expand(facts.objects(representative, property)));
+        }
+    }
+
+    private Node<OWLNamedIndividual> sameIndividuals(FactStore facts, int subject) {
+        return NodeFactory.getOWLNamedIndividualNode(individuals(facts, facts.members(subject)));
+    }
+
+    private NodeSet<OWLClass> types(FactStore facts, HierarchyIndex.View<OWLClass> hierarchy, int individual, boolean direct) {
+        int subject = facts.representative(individual);
+        int[] types = facts.objects(subject, facts.id(RDF_TYPE));
+        if (direct) types = directTypes(facts, hierarchy, subject, types);
+        int namedIndividual = facts.id(OWL_NAMED_INDIVIDUAL);
+        Set<Node<OWLClass>> nodes = new HashSet<>();
+        for (int type : types) {
+            ConcreteNode node = facts.term(type);
+            if (node instanceof URI && type != namedIndividual) {
+                nodes.add(NodeFactory.getOWLClassNode(factory.getOWLClass(IRI.create(((URI) node).uri()))));
+            }
+        }
+        return new OWLClassNodeSet(nodes);
+    }
+
+    /**
+     * With indirect type rules, excludes the types marked as indirect by facts; otherwise excludes the types
+     * which strictly subsume another of the types in the told class hierarchy of the snapshot.
+     */
+    private int[] directTypes(FactStore facts, HierarchyIndex.View<OWLClass> hierarchy, int subject, int[] types) {
+        if (config.isIndirectTypeRules()) return FactStore.difference(types, facts.objects(subject, facts.id(INDIRECT_TYPE)));
+        List<OWLClass> classes = classes(facts, types);
+        int[] direct = new int[types.length];
+        int n = 0;
+        for (int i = 0; i < types.length; i++) {
+            if (!hierarchy.subsumesAny(classes.get(i), classes)) direct[n++] = types[i];
+        }
+        return n == types.length ? types : Arrays.copyOf(direct, n);
+    }
+
+    /**
+     * @return the class of each type, or null for a type which is not a URI
+     */
+    private List<OWLClass> classes(FactStore facts, int[] types) {
+        List<OWLClass> classes = new ArrayList<>(types.length);
+        for (int type : types) {
+            ConcreteNode node = facts.term(type);
+            classes.add(node instanceof URI ? factory.getOWLClass(IRI.create(((URI) node).uri())) : null);
+        }
+        return classes;
+    }
+
+    private boolean entailed(OWLAxiom axiom) {
+        logger.info("Is entailed? " + axiom);
+        FactStore facts = facts();
+        if (axiom instanceof OWLClassAssertionAxiom) {
+            OWLClassAssertionAxiom assertion = (OWLClassAssertionAxiom) axiom;
+            ClassExpressionPlan plan = assertion.getClassExpression().isAnonymous() ? plan(assertion.getClassExpression()) : null;
+            if (plan != null && assertion.getIndividual().isNamed()) {
+                int representative = facts.representative(facts.id(asResource(assertion.getIndividual().asOWLNamedIndividual())));
+                return representative >= 0 && plan.test(facts, representative);
+            }
+            Triple triple = bridge.triple(assertion);
+            return triple == null || facts.contains(facts.canonical(triple));
+        } else if (axiom instanceof OWLObjectPropertyAssertionAxiom) {
+            return facts.contains(facts.canonical(bridge.triple(axiom)));
+        } else return structuralReasoner().isEntailed(axiom);
+    }
+
+    private boolean satisfiable(OWLClassExpression cls) {
         logger.info("Is satisfiable? " + cls);
         // First we handle the special case that a class assertion or object property assertion is being checked by the OWL API explanation tool.
         // We need to include inferences made by the rule engine.
@@ -494,82 +1198,108 @@ public class ArachneProtegeReasoner implements OWLReasoner {
                 }
                 if (oneOf != null && not != null && oneOf.getIndividuals().size() == 1) {
                     OWLIndividual individual = oneOf.getIndividuals().iterator().next();
-                    if (individual instanceof OWLNamedIndividual) {
-                        OWLNamedIndividual named = (OWLNamedIndividual) individual;
-                        return !(getInstances(not.getOperand(), false).getFlattened().contains(named));
+                    ClassExpressionPlan plan = plan(not.getOperand());
+                    if (individual instanceof OWLNamedIndividual && plan != null) {
+                        FactStore facts = facts();
+                        int representative = facts.representative(facts.id(asResource((OWLNamedIndividual) individual)));
+                        return representative < 0 || !plan.test(facts, representative);
                     }
                 }
             }
         }
-        return structuralReasoner.isSatisfiable(cls);
+        return structuralReasoner().isSatisfiable(cls);
     }
 
-    @Override
-    public void precomputeInferences(InferenceType... arg0) {
-    }
+    /**
+     * @return answers for the requested inference types over the facts, computed as individuals are looked up
+     */
+    private PrecomputedInferences precomputation(FactStore facts, HierarchyIndex.View<OWLClass> hierarchy, Set<InferenceType> types) {
+        if (types.isEmpty()) return PrecomputedInferences.NONE;
+        return new PrecomputedInferences(types, new PrecomputedInferences.Source() {
+
+            private final int rdfType = facts.id(RDF_TYPE);
+            private final int indirectType = facts.id(INDIRECT_TYPE);
+            private final int sameAs = facts.id(OWL_SAME_AS);
+            private final int differentFrom = facts.id(OWL_DIFFERENT_FROM);
+
+            @Override
+            public List<NodeSet<OWLClass>> types(OWLNamedIndividual individual) {
+                int subject = facts.id(asResource(individual));
+                return Arrays.asList(ArachneProtegeReasoner.this.types(facts, hierarchy, subject, true),
+                        ArachneProtegeReasoner.this.types(facts, hierarchy, subject, false));
+            }
 
-    private List<QuerySolution> executeSelect(String query) {
-        List<QuerySolution> solutions = new ArrayList<>();
-        QueryExecution execution = QueryExecutionFactory.create(QueryFactory.create(query), model);
-        execution.execSelect().forEachRemaining(qs -> solutions.add(qs));
-        execution.close();
-        return solutions;
+            @Override
+            public Map<OWLObjectProperty, NodeSet<OWLNamedIndividual>> objectPropertyValues(OWLNamedIndividual individual) {
+                int representative = facts.representative(facts.id(asResource(individual)));
+                Map<OWLObjectProperty, NodeSet<OWLNamedIndividual>> values = new HashMap<>();
+                for (int predicate : facts.predicates(representative)) {
+                    if (predicate == rdfType || predicate == indirectType || predicate == sameAs || predicate == differentFrom) continue;
+                    ConcreteNode property = facts.term(predicate);
+                    if (property instanceof URI) {
+                        values.put(factory.getOWLObjectProperty(IRI.create(((URI) property).uri())),
+                                individualNodes(facts, facts.expand(facts.objects(representative, predicate))));
+                    }
+                }
+                return values;
+            }
+
+            @Override
+            public Node<OWLNamedIndividual> sameIndividuals(OWLNamedIndividual individual) {
+                return ArachneProtegeReasoner.this.sameIndividuals(facts, facts.id(asResource(individual)));
+            }
+
+        });
     }
 
-    private Model executeConstruct(String query) {
-        QueryExecution execution = QueryExecutionFactory.create(QueryFactory.create(query), model);
-        Model model = execution.execConstruct();
-        execution.close();
-        return model;
+    /**
+     * Computes the answers of every individual with facts, ahead of any lookup.
+     */
+    private void fill(PrecomputedInferences precomputed, FactStore facts) {
+        long start = System.nanoTime();
+        List<OWLNamedIndividual> individuals = new ArrayList<>();
+        for (int subject = 0; subject < facts.termCount(); subject++) {
+            ConcreteNode node = facts.term(subject);
+            if (node instanceof URI && facts.predicates(subject).length > 0) {
+                individuals.add(factory.getOWLNamedIndividual(IRI.create(((URI) node).uri())));
+            }
+        }
+        precomputed.fill(individuals);
+        metrics.phase(ReasonerMetrics.PRECOMPUTATION, start);
     }
 
-    private boolean executeAsk(String query) {
-        QueryExecution execution = QueryExecutionFactory.create(QueryFactory.create(query), model);
-        boolean result = execution.execAsk();
-        execution.close();
-        return result;
+    private NodeSet<OWLNamedIndividual> individualNodes(FactStore facts, int[] ids) {
+        return new OWLNamedIndividualNodeSet(
+                individuals(facts, ids).stream()
+                        .map(NodeFactory::getOWLNamedIndividualNode)
+                        .collect(Collectors.toSet()));
     }
 
-    private Triple asTriple(OWLObjectPropertyAssertionAxiom axiom) {
-        final Resource subject;
-        if (axiom.getSubject().isNamed()) {
-            subject = new URI(axiom.getSubject().asOWLNamedIndividual().getIRI().toString());
-        } else {
-            subject = new BlankNode(axiom.getSubject().asOWLAnonymousIndividual().getID().getID());
-        }
-        final URI property;
-        final boolean inverse;
-        if (axiom.getProperty().isAnonymous()) {
-            property = new URI(axiom.getProperty().getInverseProperty().asOWLObjectProperty().getIRI().toString());
-            inverse = true;
-        } else {
-            property = new URI(axiom.getProperty().asOWLObjectProperty().getIRI().toString());
-            inverse = false;
-        }
-        final Resource object;
-        if (axiom.getObject().isNamed()) {
-            object = new URI(axiom.getObject().asOWLNamedIndividual().getIRI().toString());
-        } else {
-            object = new BlankNode(axiom.getObject().asOWLAnonymousIndividual().getID().getID());
+    /**
+     * @return the cached plan for the class expression, or null if it cannot be evaluated over the facts
+     */
+    private ClassExpressionPlan plan(OWLClassExpression ce) {
+        synchronized (plans) {
+            ClassExpressionPlan plan = plans.get(ce);
+            if (plan == null) {
+                plan = ClassExpressionPlan.compile(ce);
+                if (plan != null) plans.put(ce, plan);
+            }
+            return plan;
         }
-        if (inverse) return new Triple(object, property, subject);
-        else return new Triple(subject, property, object);
     }
 
-    private Set<Triple> asTriple(OWLClassAssertionAxiom axiom) {
-        final Resource subject;
-        if (axiom.getIndividual().isNamed()) {
-            subject = new URI(axiom.getIndividual().asOWLNamedIndividual().getIRI().toString());
-        } else {
-            subject = new BlankNode(axiom.getIndividual().asOWLAnonymousIndividual().getID().getID());
-        }
-        if (axiom.getClassExpression().isAnonymous()) {
-            return Collections.emptySet();
-        } else {
-            URI cls = new URI(axiom.getClassExpression().asOWLClass().getIRI().toString());
-            URI rdfType = new URI(OWLRDFVocabulary.RDF_TYPE.getIRI().toString());
-            return Collections.singleton(new Triple(subject, rdfType, cls));
+    private Set<OWLNamedIndividual> individuals(FactStore facts, int[] ids) {
+        Set<OWLNamedIndividual> individuals = new HashSet<>();
+        for (int id : ids) {
+            ConcreteNode node = facts.term(id);
+            if (node instanceof URI) individuals.add(factory.getOWLNamedIndividual(IRI.create(((URI) node).uri())));
         }
+        return individuals;
+    }
+
+    private static URI asResource(OWLNamedIndividual individual) {
+        return new URI(individual.getIRI().toString());
     }
 
 }
@@ -10,28 +10,43 @@ import org.semanticweb.owlapi.reasoner.SimpleConfiguration;
 
 public class ArachneProtegeReasonerFactory implements OWLReasonerFactory {
 
+	/**
+	 * Shared by all reasoners created by any factory, and exposed over JMX as {@value ReasonerMetrics#OBJECT_NAME}.
+	 */
+	private static final ReasonerMetrics metrics = new ReasonerMetrics();
+
+	/**
+	 * Compiled rule engines shared by all reasoners created by any factory whose ontologies have the same Tbox.
+	 */
+	private static final EngineCache engines = new EngineCache();
+
 	public ArachneProtegeReasonerFactory() {
 		JenaSystem.init();
+		metrics.register();
+	}
+
+	public static ReasonerMetrics getMetrics() {
+		return metrics;
 	}
 
 	@Override
 	public OWLReasoner createNonBufferingReasoner(OWLOntology ontology) {
-		return new ArachneProtegeReasoner(ontology, BufferingMode.NON_BUFFERING, new SimpleConfiguration());
+		return new ArachneProtegeReasoner(ontology, BufferingMode.NON_BUFFERING, new SimpleConfiguration(), metrics, engines);
 	}
 
 	@Override
 	public OWLReasoner createNonBufferingReasoner(OWLOntology ontology, OWLReasonerConfiguration config) {
-		return new ArachneProtegeReasoner(ontology, BufferingMode.NON_BUFFERING, config);
+		return new ArachneProtegeReasoner(ontology, BufferingMode.NON_BUFFERING, config, metrics, engines);
 	}
 
 	@Override
 	public OWLReasoner createReasoner(OWLOntology ontology) {
-		return new ArachneProtegeReasoner(ontology, BufferingMode.BUFFERING, new SimpleConfiguration());
+		return new ArachneProtegeReasoner(ontology, BufferingMode.BUFFERING, new SimpleConfiguration(), metrics, engines);
 	}
 
 	@Override
 	public OWLReasoner createReasoner(OWLOntology ontology, OWLReasonerConfiguration config) {
-		return new ArachneProtegeReasoner(ontology, BufferingMode.BUFFERING, config);
+		return new ArachneProtegeReasoner(ontology, BufferingMode.BUFFERING, config, metrics, engines);
 	}
 
 	@Override
@@ -0,0 +1,243 @@
+package org.geneontology.arachne;
+
+import org.semanticweb.owlapi.reasoner.FreshEntityPolicy;
+import org.semanticweb.owlapi.reasoner.IndividualNodeSetPolicy;
+import org.semanticweb.owlapi.reasoner.NullReasonerProgressMonitor;
+import org.semanticweb.owlapi.reasoner.OWLReasonerConfiguration;
+import org.semanticweb.owlapi.reasoner.ReasonerProgressMonitor;
+import org.semanticweb.owlapi.reasoner.SimpleConfiguration;
+
+import java.io.File;
+
+/**
+ * Reasoner configuration carrying the Arachne-specific options on top of the standard OWL API settings.
+ * Any other {@link OWLReasonerConfiguration} passed to {@link ArachneProtegeReasonerFactory} is wrapped
+ * in one of these with default Arachne options.
+ */
+public class ArachneReasonerConfiguration extends SimpleConfiguration {
+
+    /**
+     * System property giving a default rule cache directory, so that the cache can be enabled for Protégé at launch.
+     */
+    public static final String RULE_CACHE_PROPERTY = "org.geneontology.arachne.ruleCache";
+
+    private boolean incrementalRealization = false;
+    private boolean indirectTypeRules = true;
+    private boolean aboxRulePruning = false;
+    private boolean aboxPartitioning = false;
+    private boolean stopAtFirstClash = false;
+    private boolean asynchronousFlush = false;
+    private long maxFacts = Long.MAX_VALUE;
+    private int realizationParallelism = 1;
+    private long queryCacheSize = 100_000;
+    private File ruleCacheDirectory = System.getProperty(RULE_CACHE_PROPERTY) != null ? new File(System.getProperty(RULE_CACHE_PROPERTY)) : null;
+    private File materializationDirectory = null;
+    private int materializationCacheSize = 100_000;
+    private long materializationDirectoryLimit = 8L << 30;
+
+    public ArachneReasonerConfiguration() {
+        super();
+    }
+
+    public ArachneReasonerConfiguration(ReasonerProgressMonitor progressMonitor, FreshEntityPolicy freshEntityPolicy, long timeOut, IndividualNodeSetPolicy individualNodeSetPolicy) {
+        super(progressMonitor, freshEntityPolicy, timeOut, individualNodeSetPolicy);
+    }
+
+    public ArachneReasonerConfiguration(OWLReasonerConfiguration base) {
+        this(base.getProgressMonitor() != null ? base.getProgressMonitor() : new NullReasonerProgressMonitor(),
+                base.getFreshEntityPolicy(), base.getTimeOut(), base.getIndividualNodeSetPolicy());
+    }
+
+    static ArachneReasonerConfiguration from(OWLReasonerConfiguration config) {
+        if (config instanceof ArachneReasonerConfiguration) return (ArachneReasonerConfiguration) config;
+        else return new ArachneReasonerConfiguration(config);
+    }
+
+    /**
+     * When enabled, Abox additions are pushed into the existing working memory on flush
+     * instead of re-realizing the whole Abox. Removals still require the affected facts to be rebuilt.
+     * <p>
+     * Disabled by default: the working memories are then kept on the heap next to the realized facts, and take
+     * many times the space of the {@link FactStore} the queries are answered from.
+     */
+    public boolean isIncrementalRealization() {
+        return incrementalRealization;
+    }
+
+    public ArachneReasonerConfiguration setIncrementalRealization(boolean incrementalRealization) {
+        this.incrementalRealization = incrementalRealization;
+        return this;
+    }
+
+    /**
+     * When enabled, rules marking each type implied by a more specific type are added to the rule set, and direct
+     * type queries exclude the marked types. When disabled, fewer facts are realized and direct types are instead
+     * computed at query time from the told class hierarchy.
+     */
+    public boolean isIndirectTypeRules() {
+        return indirectTypeRules;
+    }
+
+    public ArachneReasonerConfiguration setIndirectTypeRules(boolean indirectTypeRules) {
+        this.indirectTypeRules = indirectTypeRules;
+        return this;
+    }
+
+    /**
+     * When enabled, only the rules which can fire given the classes and properties used by the Abox are compiled
+     * into the rule engine. The engine is rebuilt when the Abox starts using vocabulary outside what those rules reach.
+     * Shrinks the engine for a large Tbox of which the Abox uses only a small part.
+     */
+    public boolean isAboxRulePruning() {
+        return aboxRulePruning;
+    }
+
+    public ArachneReasonerConfiguration setAboxRulePruning(boolean aboxRulePruning) {
+        this.aboxRulePruning = aboxRulePruning;
+        return this;
+    }
+
+    /**
+     * When enabled, the Abox is split into groups of individuals which no rule can join, each realized in its own
+     * working memory. A retraction then only re-realizes the group of the retracted triple, and with
+     * {@link #setRealizationParallelism(int) parallelism} above 1 the groups are realized concurrently.
+     * Individuals are grouped with those they are linked to, and with the individuals named in the rules their facts
+     * may link them to, which joins many individuals for a Tbox naming individuals in frequently used axioms.
+     */
+    public boolean isAboxPartitioning() {
+        return aboxPartitioning;
+    }
+
+    public ArachneReasonerConfiguration setAboxPartitioning(boolean aboxPartitioning) {
+        this.aboxPartitioning = aboxPartitioning;
+        return this;
+    }
+
+    /**
+     * When enabled, realization stops as soon as an individual is found to be an instance of owl:Nothing.
+     * The reasoner then reports the ontology as inconsistent, with the individuals found so far, while the other
+     * queries keep answering from the last realization which completed.
+     */
+    public boolean isStopAtFirstClash() {
+        return stopAtFirstClash;
+    }
+
+    public ArachneReasonerConfiguration setStopAtFirstClash(boolean stopAtFirstClash) {
+        this.stopAtFirstClash = stopAtFirstClash;
+        return this;
+    }
+
+    /**
+     * When enabled, {@link ArachneProtegeReasoner#flush()} returns immediately and realization runs on a background thread.
+     * Queries keep answering from the last completed realization until the new one is swapped in.
+     */
+    public boolean isAsynchronousFlush() {
+        return asynchronousFlush;
+    }
+
+    public ArachneReasonerConfiguration setAsynchronousFlush(boolean asynchronousFlush) {
+        this.asynchronousFlush = asynchronousFlush;
+        return this;
+    }
+
+    /**
+     * Maximum number of facts a realization may hold, over all working memories and counted as they are derived,
+     * before it is aborted with a {@link org.semanticweb.owlapi.reasoner.ReasonerInterruptedException}, leaving the
+     * previous realization in place.
+     */
+    public long getMaxFacts() {
+        return maxFacts;
+    }
+
+    public ArachneReasonerConfiguration setMaxFacts(long maxFacts) {
+        this.maxFacts = maxFacts;
+        return this;
+    }
+
+    /**
+     * Number of threads used to realize the Abox. Above 1, the working memories of a
+     * {@link #setAboxPartitioning(boolean) partitioned} Abox are realized concurrently; without partitioning
+     * there is only one.
+     */
+    public int getRealizationParallelism() {
+        return realizationParallelism;
+    }
+
+    public ArachneReasonerConfiguration setRealizationParallelism(int realizationParallelism) {
+        this.realizationParallelism = realizationParallelism;
+        return this;
+    }
+
+    /**
+     * Maximum total number of nodes held in cached query results, which are dropped whenever a flush
+     * changes the realized facts. 0 disables the cache.
+     */
+    public long getQueryCacheSize() {
+        return queryCacheSize;
+    }
+
+    public ArachneReasonerConfiguration setQueryCacheSize(long queryCacheSize) {
+        this.queryCacheSize = queryCacheSize;
+        return this;
+    }
+
+    /**
+     * Directory in which translated Tbox rules are cached between reasoner instances, keyed by a
+     * fingerprint of the Tbox. If null, rules are always translated from the ontology.
+     */
+    public File getRuleCacheDirectory() {
+        return ruleCacheDirectory;
+    }
+
+    public ArachneReasonerConfiguration setRuleCacheDirectory(File ruleCacheDirectory) {
+        this.ruleCacheDirectory = ruleCacheDirectory;
+        return this;
+    }
+
+    /**
+     * Directory in which realized facts are stored as memory-mapped files, keyed by the Tbox rules and the
+     * asserted Abox, instead of being held on the heap. A stored realization is reused without running the rules
+     * when the same Abox is loaded again. If null, realized facts are kept on the heap.
+     * <p>
+     * Realizations are stored after a full realization of the Abox, and when the reasoner is disposed after
+     * incremental changes, replacing the reasoner's previous entry.
+     * <p>
+     * The working memories used for incremental realization are still held on the heap, so an Abox whose
+     * realization exceeds the heap requires {@link #setIncrementalRealization(boolean) incremental realization}
+     * to be disabled, which releases them after each flush.
+     */
+    public File getMaterializationDirectory() {
+        return materializationDirectory;
+    }
+
+    public ArachneReasonerConfiguration setMaterializationDirectory(File materializationDirectory) {
+        this.materializationDirectory = materializationDirectory;
+        return this;
+    }
+
+    /**
+     * Maximum number of decoded terms kept on the heap for stored realizations.
+     */
+    public int getMaterializationCacheSize() {
+        return materializationCacheSize;
+    }
+
+    public ArachneReasonerConfiguration setMaterializationCacheSize(int materializationCacheSize) {
+        this.materializationCacheSize = materializationCacheSize;
+        return this;
+    }
+
+    /**
+     * Maximum total size in bytes of the realizations kept in the materialization directory.
+     * Beyond it, the least recently used realizations are deleted.
+     */
+    public long getMaterializationDirectoryLimit() {
+        return materializationDirectoryLimit;
+    }
+
+    public ArachneReasonerConfiguration setMaterializationDirectoryLimit(long materializationDirectoryLimit) {
+        this.materializationDirectoryLimit = materializationDirectoryLimit;
+        return this;
+    }
+
+}
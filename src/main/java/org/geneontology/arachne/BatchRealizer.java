@@ -0,0 +1,264 @@
+package org.geneontology.arachne;
+
+import org.apache.jena.riot.RDFLanguages;
+import org.apache.jena.system.JenaSystem;
+import org.geneontology.rules.engine.Triple;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.AxiomType;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.reasoner.ReasonerInterruptedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Realizes many independent Aboxes against one Tbox. The rule engine is built once, as by {@link StreamingRealizer},
+ * and the Aboxes are realized concurrently on a work-stealing pool, each in its own working memory. At most a
+ * bounded number of Aboxes are queued or in progress at once, so inputs are only loaded as fast as they are realized.
+ * <p>
+ * Usage: {@code BatchRealizer <tbox> <output directory> <abox>... [--threads n] [--inferred-only]}
+ * <p>
+ * Each Abox is written to the output directory under its file name with {@code .nt} appended; Aboxes with the same
+ * file name in different directories are rejected before any is realized.
+ */
+public class BatchRealizer {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchRealizer.class);
+
+    /**
+     * Receives each realized Abox. Called concurrently from the pool threads.
+     */
+    public interface Sink {
+
+        /**
+         * @param source name of the Abox: the file location, or the ontology ID
+         */
+        void accept(String source, StreamingRealizer.Realization realization) throws Exception;
+
+    }
+
+    /**
+     * Counts and throughput of a batch.
+     */
+    public static final class Statistics {
+
+        public final long aboxes;
+        public final long failures;
+        public final long triples;
+        public final long facts;
+        public final long elapsedNanos;
+
+        Statistics(long aboxes, long failures, long triples, long facts, long elapsedNanos) {
+            this.aboxes = aboxes;
+            this.failures = failures;
+            this.triples = triples;
+            this.facts = facts;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public double aboxesPerSecond() {
+            return aboxes / seconds();
+        }
+
+        public double factsPerSecond() {
+            return facts / seconds();
+        }
+
+        private double seconds() {
+            return Math.max(elapsedNanos, 1) / 1e9;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d Aboxes (%d failed), %d asserted triples, %d facts in %.1f s: %.1f Aboxes/s, %.0f facts/s",
+                    aboxes, failures, triples, facts, seconds(), aboxesPerSecond(), factsPerSecond());
+        }
+
+    }
+
+    private interface Task {
+
+        String source();
+
+        StreamingRealizer.Realization realize(StreamingRealizer realizer);
+
+    }
+
+    private final StreamingRealizer realizer;
+    private final int parallelism;
+    private final boolean keepAsserted;
+    /**
+     * Shared by the pool threads, so Aboxes over the same vocabulary share its terms
+     */
+    private final TripleBridge bridge = new TripleBridge();
+
+    /**
+     * @param parallelism number of Aboxes realized at once
+     */
+    public BatchRealizer(OWLOntology tbox, int parallelism) {
+        this(tbox, parallelism, false);
+    }
+
+    /**
+     * @param keepAsserted if true, the asserted triples of each Abox are kept, so that its inferred facts can be told apart
+     */
+    public BatchRealizer(OWLOntology tbox, int parallelism, boolean keepAsserted) {
+        this.realizer = new StreamingRealizer(tbox);
+        this.parallelism = parallelism;
+        this.keepAsserted = keepAsserted;
+    }
+
+    /**
+     * Realizes the class and object property assertions of each ontology, not including its imports.
+     */
+    public Statistics realizeOntologies(Iterable<OWLOntology> aboxes, Sink sink) {
+        return run(tasks(aboxes, abox -> new Task() {
+
+            @Override
+            public String source() {
+                return abox.getOntologyID().toString();
+            }
+
+            @Override
+            public StreamingRealizer.Realization realize(StreamingRealizer realizer) {
+                // Triples are converted as the engine consumes them; its working memory drops duplicates
+                Iterable<OWLAxiom> assertions = () -> Stream.concat(abox.getAxioms(AxiomType.OBJECT_PROPERTY_ASSERTION).stream(),
+                        abox.getAxioms(AxiomType.CLASS_ASSERTION).stream()).map(OWLAxiom.class::cast).iterator();
+                return realizer.realize(bridge.triples(assertions), keepAsserted);
+            }
+
+        }), sink);
+    }
+
+    /**
+     * Realizes each RDF file, in any syntax Jena recognizes from its name.
+     */
+    public Statistics realizeFiles(Iterable<String> locations, Sink sink) {
+        return run(tasks(locations, location -> new Task() {
+
+            @Override
+            public String source() {
+                return location;
+            }
+
+            @Override
+            public StreamingRealizer.Realization realize(StreamingRealizer realizer) {
+                return realizer.realize(location, keepAsserted);
+            }
+
+        }), sink);
+    }
+
+    /**
+     * @return tasks created as the inputs are iterated, so that inputs are only read once the pool has room
+     */
+    private static <T> Iterable<Task> tasks(Iterable<T> inputs, Function<T, Task> task) {
+        return () -> StreamSupport.stream(inputs.spliterator(), false).map(task).iterator();
+    }
+
+    private Statistics run(Iterable<Task> tasks, Sink sink) {
+        long start = System.nanoTime();
+        AtomicLong aboxes = new AtomicLong();
+        AtomicLong failures = new AtomicLong();
+        AtomicLong triples = new AtomicLong();
+        AtomicLong facts = new AtomicLong();
+        int maxPending = parallelism * 2;
+        Semaphore pending = new Semaphore(maxPending);
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            for (Task task : tasks) {
+                pending.acquire();
+                pool.execute(() -> {
+                    try {
+                        StreamingRealizer.Realization realization = task.realize(realizer);
+                        triples.addAndGet(realization.triples);
+                        facts.addAndGet(realization.memory.facts().size());
+                        sink.accept(task.source(), realization);
+                    } catch (Exception e) {
+                        failures.incrementAndGet();
+                        logger.error("Unable to realize " + task.source(), e);
+                    } finally {
+                        aboxes.incrementAndGet();
+                        pending.release();
+                    }
+                });
+            }
+            // Wait for the tasks still running
+            pending.acquire(maxPending);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ReasonerInterruptedException(e);
+        } finally {
+            pool.shutdownNow();
+        }
+        Statistics statistics = new Statistics(aboxes.get(), failures.get(), triples.get(), facts.get(), System.nanoTime() - start);
+        logger.info("Realized " + statistics);
+        return statistics;
+    }
+
+    public static void main(String[] args) throws OWLOntologyCreationException {
+        List<String> files = new ArrayList<>();
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean inferredOnly = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "--inferred-only":
+                    inferredOnly = true;
+                    break;
+                default:
+                    files.add(args[i]);
+            }
+        }
+        if (files.size() < 3) {
+            System.err.println("Usage: BatchRealizer <tbox> <output directory> <abox>... [--threads n] [--inferred-only]");
+            System.exit(1);
+        }
+        List<String> aboxes = files.subList(2, files.size());
+        // Each Abox is written under its file name, which must not be shared with an Abox from another directory
+        Map<String, String> outputs = new HashMap<>();
+        for (String abox : aboxes) {
+            if (RDFLanguages.filenameToLang(abox) == null) {
+                System.err.println("Unrecognized RDF syntax for " + abox);
+                System.exit(1);
+            }
+            String previous = outputs.put(outputName(abox), abox);
+            if (previous != null) {
+                System.err.println("Aboxes " + previous + " and " + abox + " would both be written to " + outputName(abox));
+                System.exit(1);
+            }
+        }
+        File outputDirectory = new File(files.get(1));
+        outputDirectory.mkdirs();
+        JenaSystem.init();
+        OWLOntology tbox = OWLManager.createOWLOntologyManager().loadOntologyFromOntologyDocument(new File(files.get(0)));
+        boolean exportInferredOnly = inferredOnly;
+        Statistics statistics = new BatchRealizer(tbox, threads, inferredOnly).realizeFiles(aboxes, (source, realization) -> {
+            File output = new File(outputDirectory, outputName(source));
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(output))) {
+                StreamingRealizer.write(realization, out, exportInferredOnly);
+            }
+        });
+        if (statistics.failures > 0) System.exit(1);
+    }
+
+    private static String outputName(String abox) {
+        return new File(abox).getName() + ".nt";
+    }
+
+}
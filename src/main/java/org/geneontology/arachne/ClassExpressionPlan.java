@@ -0,0 +1,248 @@
+package org.geneontology.arachne;
+
+import org.geneontology.rules.engine.URI;
+import org.semanticweb.owlapi.model.*;
+import org.semanticweb.owlapi.vocab.OWLRDFVocabulary;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Evaluation plan for an EL class expression over realized facts: named classes, object intersections,
+ * existential restrictions and has-value restrictions with named individuals, over named properties or their inverses.
+ * <p>
+ * A plan holds terms rather than fact IDs, so it is independent of any one realization and may be cached across flushes.
+ * Individuals are the representatives of their equivalence classes, as stored in the {@link FactStore}.
+ * Intersections start from the cheapest conjunct and filter its instances through the others; a restriction
+ * filtering candidates follows each candidate's property values rather than computing all of its own instances.
+ */
+abstract class ClassExpressionPlan {
+
+    private static final URI RDF_TYPE = new URI(OWLRDFVocabulary.RDF_TYPE.getIRI().toString());
+
+    /**
+     * @return the plan, or null if the expression uses constructs other than those supported
+     */
+    static ClassExpressionPlan compile(OWLClassExpression ce) {
+        if (!ce.isAnonymous()) {
+            return new Named(asResource(ce.asOWLClass()));
+        } else if (ce instanceof OWLObjectIntersectionOf) {
+            List<ClassExpressionPlan> conjuncts = new ArrayList<>();
+            for (OWLClassExpression operand : ((OWLObjectIntersectionOf) ce).getOperands()) {
+                ClassExpressionPlan conjunct = compile(operand);
+                if (conjunct == null) return null;
+                conjuncts.add(conjunct);
+            }
+            if (conjuncts.isEmpty()) return null;
+            conjuncts.sort(Comparator.comparingInt(ClassExpressionPlan::cost));
+            return new Intersection(conjuncts);
+        } else if (ce instanceof OWLObjectSomeValuesFrom) {
+            OWLObjectSomeValuesFrom some = (OWLObjectSomeValuesFrom) ce;
+            ClassExpressionPlan filler = compile(some.getFiller());
+            if (filler == null) return null;
+            OWLObjectPropertyExpression property = some.getProperty().getSimplified();
+            return new SomeValuesFrom(property(property), property.isAnonymous(), filler);
+        } else if (ce instanceof OWLObjectHasValue) {
+            OWLObjectHasValue hasValue = (OWLObjectHasValue) ce;
+            if (!(hasValue.getFiller() instanceof OWLNamedIndividual)) return null;
+            URI value = new URI(((OWLNamedIndividual) hasValue.getFiller()).getIRI().toString());
+            OWLObjectPropertyExpression property = hasValue.getProperty().getSimplified();
+            return new HasValue(property(property), property.isAnonymous(), value);
+        } else return null;
+    }
+
+    /**
+     * @return sorted IDs of all instances
+     */
+    abstract int[] instances(FactStore facts);
+
+    /**
+     * @param candidates sorted IDs
+     * @return the candidates which are instances
+     */
+    abstract int[] filter(FactStore facts, int[] candidates);
+
+    abstract boolean test(FactStore facts, int individual);
+
+    /**
+     * Relative cost of computing the instances; index lookups are cheapest, nested restrictions the most expensive.
+     */
+    abstract int cost();
+
+    private static final class Named extends ClassExpressionPlan {
+
+        private final URI cls;
+
+        Named(URI cls) {
+            this.cls = cls;
+        }
+
+        @Override
+        int[] instances(FactStore facts) {
+            return facts.subjects(facts.id(RDF_TYPE), facts.id(cls));
+        }
+
+        @Override
+        int[] filter(FactStore facts, int[] candidates) {
+            return FactStore.intersection(candidates, instances(facts));
+        }
+
+        @Override
+        boolean test(FactStore facts, int individual) {
+            return Arrays.binarySearch(facts.objects(individual, facts.id(RDF_TYPE)), facts.id(cls)) >= 0;
+        }
+
+        @Override
+        int cost() {
+            return 0;
+        }
+
+    }
+
+    private static final class HasValue extends ClassExpressionPlan {
+
+        private final URI property;
+        private final boolean inverse;
+        private final URI value;
+
+        HasValue(URI property, boolean inverse, URI value) {
+            this.property = property;
+            this.inverse = inverse;
+            this.value = value;
+        }
+
+        @Override
+        int[] instances(FactStore facts) {
+            return predecessors(facts, facts.representative(facts.id(value)), property, inverse);
+        }
+
+        @Override
+        int[] filter(FactStore facts, int[] candidates) {
+            return FactStore.intersection(candidates, instances(facts));
+        }
+
+        @Override
+        boolean test(FactStore facts, int individual) {
+            int representative = facts.representative(facts.id(value));
+            return representative >= 0 && Arrays.binarySearch(successors(facts, individual, property, inverse), representative) >= 0;
+        }
+
+        @Override
+        int cost() {
+            return 0;
+        }
+
+    }
+
+    private static final class SomeValuesFrom extends ClassExpressionPlan {
+
+        private final URI property;
+        private final boolean inverse;
+        private final ClassExpressionPlan filler;
+
+        SomeValuesFrom(URI property, boolean inverse, ClassExpressionPlan filler) {
+            this.property = property;
+            this.inverse = inverse;
+            this.filler = filler;
+        }
+
+        @Override
+        int[] instances(FactStore facts) {
+            int[] values = filler.instances(facts);
+            int[] result = new int[values.length];
+            int n = 0;
+            for (int value : values) {
+                int[] predecessors = predecessors(facts, value, property, inverse);
+                if (n + predecessors.length > result.length) result = Arrays.copyOf(result, Math.max(result.length * 2, n + predecessors.length));
+                System.arraycopy(predecessors, 0, result, n, predecessors.length);
+                n += predecessors.length;
+            }
+            return Arrays.stream(result, 0, n).sorted().distinct().toArray();
+        }
+
+        @Override
+        int[] filter(FactStore facts, int[] candidates) {
+            return Arrays.stream(candidates).filter(candidate -> test(facts, candidate)).toArray();
+        }
+
+        @Override
+        boolean test(FactStore facts, int individual) {
+            for (int value : successors(facts, individual, property, inverse)) {
+                if (filler.test(facts, value)) return true;
+            }
+            return false;
+        }
+
+        @Override
+        int cost() {
+            return 1 + filler.cost();
+        }
+
+    }
+
+    private static final class Intersection extends ClassExpressionPlan {
+
+        /**
+         * In order of increasing cost
+         */
+        private final List<ClassExpressionPlan> conjuncts;
+
+        Intersection(List<ClassExpressionPlan> conjuncts) {
+            this.conjuncts = conjuncts;
+        }
+
+        @Override
+        int[] instances(FactStore facts) {
+            int[] instances = conjuncts.get(0).instances(facts);
+            for (int i = 1; i < conjuncts.size() && instances.length > 0; i++) {
+                instances = conjuncts.get(i).filter(facts, instances);
+            }
+            return instances;
+        }
+
+        @Override
+        int[] filter(FactStore facts, int[] candidates) {
+            for (ClassExpressionPlan conjunct : conjuncts) {
+                if (candidates.length == 0) break;
+                candidates = conjunct.filter(facts, candidates);
+            }
+            return candidates;
+        }
+
+        @Override
+        boolean test(FactStore facts, int individual) {
+            for (ClassExpressionPlan conjunct : conjuncts) {
+                if (!conjunct.test(facts, individual)) return false;
+            }
+            return true;
+        }
+
+        @Override
+        int cost() {
+            return conjuncts.get(conjuncts.size() - 1).cost();
+        }
+
+    }
+
+    private static int[] successors(FactStore facts, int subject, URI property, boolean inverse) {
+        return inverse ? facts.subjects(facts.id(property), subject) : facts.objects(subject, facts.id(property));
+    }
+
+    private static int[] predecessors(FactStore facts, int object, URI property, boolean inverse) {
+        return inverse ? facts.objects(object, facts.id(property)) : facts.subjects(facts.id(property), object);
+    }
+
+    /**
+     * @return the named property of a property or its inverse
+     */
+    private static URI property(OWLObjectPropertyExpression property) {
+        return new URI(property.getNamedProperty().getIRI().toString());
+    }
+
+    private static URI asResource(OWLClass cls) {
+        return new URI(cls.getIRI().toString());
+    }
+
+}
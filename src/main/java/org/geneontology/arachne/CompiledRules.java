@@ -0,0 +1,129 @@
+package org.geneontology.arachne;
+
+import org.geneontology.rules.engine.*;
+import org.semanticweb.owlapi.vocab.OWLRDFVocabulary;
+import scala.collection.JavaConverters;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A rule engine compiled from a Tbox, with what realization and change filtering need to know about its rules.
+ * Immutable, so one instance may be shared by reasoners over the same Tbox, each with its own working memories.
+ * <p>
+ * The engine may be pruned to the rules which can fire given an Abox vocabulary. The reachability index always
+ * covers every rule of the Tbox, so a pruned instance can be extended to more vocabulary without translating again.
+ */
+final class CompiledRules {
+
+    private static final URI RDF_TYPE = new URI(OWLRDFVocabulary.RDF_TYPE.getIRI().toString());
+    private static final URI OWL_NOTHING = new URI(OWLRDFVocabulary.OWL_NOTHING.getIRI().toString());
+
+    /**
+     * Fact concluded by every rule concluding an owl:Nothing type, so that a clash in a working memory can be
+     * noticed with a single lookup. Not part of the realized facts.
+     */
+    static final Triple CLASH = new Triple(new URI("http://arachne.geneontology.org/realization"),
+            new URI("http://arachne.geneontology.org/clash"), OWL_NOTHING);
+
+    final RuleEngine engine;
+
+    /**
+     * Number of rules in the engine
+     */
+    final int ruleCount;
+
+    /**
+     * Whether any rule in the engine concludes owl:sameAs; see {@link AboxRealizer#derivesSameAs(java.util.Collection)}.
+     */
+    final boolean derivesSameAs;
+
+    /**
+     * Individuals named by the rules; see {@link AboxRealizer#ruleConstants(java.util.Collection)}.
+     */
+    final Set<URI> constants;
+    final RuleReachability reachability;
+
+    /**
+     * Rules of each Tbox axiom, keyed by axiom string as by {@link RuleTranslator#translations()}, so that reasoners
+     * sharing the engine need not translate the Tbox again; null if the engine is not shared
+     */
+    final Map<String, List<Rule>> translations;
+
+    /**
+     * Rules compiled into the engine, before clashes are marked
+     */
+    private final List<Rule> rules;
+    private ConstantLinks links = null;
+
+    /**
+     * Classes and properties reachable from the vocabulary the engine was pruned to, or null if it has every rule
+     */
+    private final Set<URI> reachable;
+
+    CompiledRules(List<Rule> rules) {
+        this(rules, null, null);
+    }
+
+    /**
+     * @param vocabulary   classes and properties used by the Abox, to prune the engine to, or null for every rule
+     * @param translations translations of the Tbox axioms the rules come from, or null
+     */
+    CompiledRules(List<Rule> rules, Set<URI> vocabulary, Map<String, List<Rule>> translations) {
+        this(new RuleReachability(rules), rules, vocabulary, translations);
+    }
+
+    private CompiledRules(RuleReachability reachability, List<Rule> rules, Set<URI> vocabulary, Map<String, List<Rule>> translations) {
+        Set<URI> reachable = vocabulary != null ? reachability.closure(vocabulary) : null;
+        List<Rule> compiled = reachable != null ? reachability.firable(reachable) : rules;
+        this.engine = new RuleEngine(JavaConverters.asScalaBuffer(markClashes(compiled)), true);
+        this.ruleCount = compiled.size();
+        this.derivesSameAs = AboxRealizer.derivesSameAs(compiled);
+        this.constants = AboxRealizer.ruleConstants(compiled);
+        this.reachability = reachability;
+        this.reachable = reachable;
+        this.rules = compiled;
+        this.translations = translations;
+    }
+
+    /**
+     * @return the index of which facts may link individuals to {@link #constants}, built on first use
+     */
+    synchronized ConstantLinks links() {
+        if (links == null) links = new ConstantLinks(rules, constants);
+        return links;
+    }
+
+    private static List<Rule> markClashes(List<Rule> rules) {
+        TriplePattern clash = new TriplePattern(CLASH.s(), CLASH.p(), CLASH.o());
+        List<Rule> marked = new ArrayList<>(rules.size());
+        for (Rule rule : rules) {
+            List<TriplePattern> head = JavaConverters.seqAsJavaList(rule.head());
+            if (head.stream().anyMatch(pattern -> pattern.p().equals(RDF_TYPE) && pattern.o().equals(OWL_NOTHING))) {
+                List<TriplePattern> markedHead = new ArrayList<>(head);
+                markedHead.add(clash);
+                marked.add(new Rule(rule.name(), rule.body(), JavaConverters.asScalaBuffer(markedHead).toList()));
+            } else {
+                marked.add(rule);
+            }
+        }
+        return marked;
+    }
+
+    /**
+     * @return true if the engine has every rule which can fire given the vocabulary
+     */
+    boolean covers(Set<URI> vocabulary) {
+        return reachable == null || reachable.containsAll(vocabulary);
+    }
+
+    /**
+     * @return an engine over the same Tbox pruned to the vocabulary
+     */
+    CompiledRules prune(Set<URI> vocabulary) {
+        return new CompiledRules(reachability, null, vocabulary, translations);
+    }
+
+}
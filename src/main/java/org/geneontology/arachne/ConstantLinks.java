@@ -0,0 +1,130 @@
+package org.geneontology.arachne;
+
+import org.geneontology.rules.engine.Node;
+import org.geneontology.rules.engine.Rule;
+import org.geneontology.rules.engine.Triple;
+import org.geneontology.rules.engine.TriplePattern;
+import org.geneontology.rules.engine.URI;
+import org.geneontology.rules.engine.Variable;
+import org.semanticweb.owlapi.vocab.OWLRDFVocabulary;
+import scala.collection.JavaConverters;
+
+import java.util.*;
+
+/**
+ * Index of the rule constants whose facts an individual's facts may come to be joined with, for partitioning
+ * the Abox into working memories which can be realized separately.
+ * <p>
+ * Two individuals only share a rule match if they are linked, by asserted facts or by derived ones. Rules only derive
+ * a link between individuals already linked, except to the individuals they name, as in {@code C SubClassOf p value a}.
+ * A rule naming a constant can only fire for an individual whose facts reach its body: the terms of that body,
+ * and backwards, the terms of any rule body concluding one of them. A fact using such a term may therefore
+ * link its subject to the constant, and the two must be realized in the same working memory.
+ * <p>
+ * A term is the class of an rdf:type pattern, or else the predicate. This over-approximates, like {@link RuleReachability}:
+ * a rule counts as soon as one of its body terms is reached, and a pattern with a variable predicate, or an rdf:type
+ * pattern with a variable class, links the constant to every individual.
+ */
+final class ConstantLinks {
+
+    private static final URI RDF_TYPE = new URI(OWLRDFVocabulary.RDF_TYPE.getIRI().toString());
+
+    /**
+     * Constants reached from each term
+     */
+    private final Map<URI, Set<URI>> byTerm = new HashMap<>();
+
+    /**
+     * Constants reached from every individual
+     */
+    private final Set<URI> everywhere = new HashSet<>();
+
+    /**
+     * @param constants individuals named in the rules, as given by {@link AboxRealizer#ruleConstants(Collection)}
+     */
+    ConstantLinks(Collection<Rule> rules, Set<URI> constants) {
+        List<Set<URI>> bodies = new ArrayList<>(rules.size());
+        Map<URI, List<Integer>> rulesByHeadTerm = new HashMap<>();
+        List<Integer> openHeads = new ArrayList<>();
+        Map<URI, List<Integer>> rulesByConstant = new HashMap<>();
+        for (Rule rule : rules) {
+            int index = bodies.size();
+            List<TriplePattern> body = JavaConverters.seqAsJavaList(rule.body());
+            List<TriplePattern> head = JavaConverters.seqAsJavaList(rule.head());
+            bodies.add(terms(body));
+            Set<URI> headTerms = terms(head);
+            if (headTerms.contains(null)) openHeads.add(index);
+            for (URI term : headTerms) {
+                if (term != null) rulesByHeadTerm.computeIfAbsent(term, k -> new ArrayList<>()).add(index);
+            }
+            for (List<TriplePattern> patterns : Arrays.asList(body, head)) {
+                for (TriplePattern pattern : patterns) {
+                    for (Node node : Arrays.asList(pattern.s(), pattern.o())) {
+                        if (node instanceof URI && constants.contains(node)) {
+                            List<Integer> naming = rulesByConstant.computeIfAbsent((URI) node, k -> new ArrayList<>());
+                            if (naming.isEmpty() || naming.get(naming.size() - 1) != index) naming.add(index);
+                        }
+                    }
+                }
+            }
+        }
+        for (Map.Entry<URI, List<Integer>> entry : rulesByConstant.entrySet()) {
+            URI constant = entry.getKey();
+            Set<URI> reached = new HashSet<>();
+            boolean[] visited = new boolean[bodies.size()];
+            Deque<Integer> queue = new ArrayDeque<>(entry.getValue());
+            boolean open = false;
+            while (!queue.isEmpty() && !open) {
+                int rule = queue.pop();
+                if (visited[rule]) continue;
+                visited[rule] = true;
+                for (URI term : bodies.get(rule)) {
+                    if (term == null) {
+                        open = true;
+                    } else if (reached.add(term)) {
+                        queue.addAll(rulesByHeadTerm.getOrDefault(term, Collections.emptyList()));
+                        queue.addAll(openHeads);
+                    }
+                }
+            }
+            if (open) {
+                everywhere.add(constant);
+            } else {
+                for (URI term : reached) {
+                    byTerm.computeIfAbsent(term, k -> new HashSet<>()).add(constant);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the constants the subject of the triple must be realized with, apart from those of {@link #everywhere()}
+     */
+    Set<URI> reached(Triple triple) {
+        URI term = triple.p().equals(RDF_TYPE) && triple.o() instanceof URI ? (URI) triple.o() : triple.p();
+        return byTerm.getOrDefault(term, Collections.emptySet());
+    }
+
+    /**
+     * @return the constants every individual must be realized with
+     */
+    Set<URI> everywhere() {
+        return everywhere;
+    }
+
+    /**
+     * @return the terms of the patterns, with null standing for a pattern which may match a fact using any term
+     */
+    private static Set<URI> terms(List<TriplePattern> patterns) {
+        Set<URI> terms = new HashSet<>();
+        for (TriplePattern pattern : patterns) {
+            Node predicate = pattern.p();
+            if (predicate instanceof Variable) terms.add(null);
+            else if (!predicate.equals(RDF_TYPE)) terms.add((URI) predicate);
+            else if (pattern.o() instanceof URI) terms.add((URI) pattern.o());
+            else terms.add(null);
+        }
+        return terms;
+    }
+
+}
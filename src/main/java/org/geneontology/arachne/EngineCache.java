@@ -0,0 +1,83 @@
+package org.geneontology.arachne;
+
+import org.geneontology.rules.engine.URI;
+import org.semanticweb.owlapi.reasoner.ReasonerInterruptedException;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Reference-counted cache of {@link CompiledRules}, keyed by the Tbox fingerprint and the vocabulary the engine is
+ * pruned to. Reasoners over the same Tbox share one translation and compiled engine; it is dropped once the last
+ * of them releases it. Concurrent requests for a key not yet compiled wait for a single compilation.
+ */
+final class EngineCache {
+
+    private static final class Entry {
+
+        final FutureTask<CompiledRules> compilation;
+        int references = 0;
+
+        Entry(FutureTask<CompiledRules> compilation) {
+            this.compilation = compilation;
+        }
+
+    }
+
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    /**
+     * @param fingerprint Tbox fingerprint, from {@link RuleCache#fingerprint}
+     * @param vocabulary  Abox vocabulary the engine is pruned to, or null
+     * @return key under which reasoners share an engine
+     */
+    static String key(String fingerprint, Set<URI> vocabulary) {
+        if (vocabulary == null) return fingerprint;
+        return fingerprint + "|" + vocabulary.stream().map(URI::uri).sorted().collect(Collectors.joining(" "));
+    }
+
+    /**
+     * Returns the compiled rules for the key, compiling them on the calling thread if no other reasoner holds them.
+     * Each successful call must be matched by a {@link #release(String)}.
+     */
+    CompiledRules acquire(String key, Supplier<CompiledRules> compile) {
+        Entry entry;
+        boolean compiling = false;
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry == null) {
+                entry = new Entry(new FutureTask<>(compile::get));
+                entries.put(key, entry);
+                compiling = true;
+            }
+            entry.references++;
+        }
+        if (compiling) entry.compilation.run();
+        try {
+            return entry.compilation.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            discard(key, entry);
+            throw new ReasonerInterruptedException(e);
+        } catch (ExecutionException e) {
+            // Later requests compile again rather than seeing the failure
+            discard(key, entry);
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            else throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    synchronized void release(String key) {
+        Entry entry = entries.get(key);
+        if (entry != null && --entry.references == 0) entries.remove(key);
+    }
+
+    private synchronized void discard(String key, Entry entry) {
+        entry.references--;
+        if (entries.get(key) == entry && (entry.references == 0 || entry.compilation.isDone())) entries.remove(key);
+    }
+
+}
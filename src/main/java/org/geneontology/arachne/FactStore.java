@@ -0,0 +1,337 @@
+package org.geneontology.arachne;
+
+import org.geneontology.rules.engine.ConcreteNode;
+import org.geneontology.rules.engine.Resource;
+import org.geneontology.rules.engine.Triple;
+import org.geneontology.rules.engine.URI;
+import org.semanticweb.owlapi.vocab.OWLRDFVocabulary;
+
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Immutable, dictionary-encoded store of realized facts.
+ * <p>
+ * Terms are interned to int IDs by a {@link TermDictionary}. Triples are kept in two compressed sparse row
+ * layouts of packed longs: one grouped by subject holding (predicate, object) pairs, and one grouped
+ * by object holding (predicate, subject) pairs. Each group is sorted, so lookups are a binary search
+ * and results come back as sorted int arrays.
+ * <p>
+ * The layouts are held in buffers, so the same store can be backed by heap arrays or, through
+ * {@link MaterializationStore}, by a memory-mapped file.
+ * <p>
+ * Individuals merged by owl:sameAs are realized over one representative, as by {@link AboxRealizer}; each other
+ * member has a single owl:sameAs fact pointing to the representative. Queries about a member go through
+ * {@link #representative(int)}, and answers are expanded to all members with {@link #expand(int[])}.
+ */
+final class FactStore {
+
+    private static final int[] NONE = new int[0];
+
+    private static final URI OWL_SAME_AS = new URI(OWLRDFVocabulary.OWL_SAME_AS.getIRI().toString());
+
+    static final FactStore EMPTY = build(Collections.emptyList());
+
+    private final TermIndex dictionary;
+    private final IntBuffer subjectOffsets;
+    private final LongBuffer predicateObjects;
+    private final IntBuffer objectOffsets;
+    private final LongBuffer predicateSubjects;
+    private final int sameAs;
+
+    FactStore(TermIndex dictionary, IntBuffer subjectOffsets, LongBuffer predicateObjects, IntBuffer objectOffsets, LongBuffer predicateSubjects) {
+        this.dictionary = dictionary;
+        this.subjectOffsets = subjectOffsets;
+        this.predicateObjects = predicateObjects;
+        this.objectOffsets = objectOffsets;
+        this.predicateSubjects = predicateSubjects;
+        this.sameAs = dictionary.lookup(OWL_SAME_AS);
+    }
+
+    static FactStore build(Iterable<Triple> facts) {
+        TermDictionary dictionary = new TermDictionary();
+        int count = 0;
+        for (Triple triple : facts) {
+            dictionary.encode(triple.s());
+            dictionary.encode(triple.p());
+            dictionary.encode(triple.o());
+            count++;
+        }
+        int[] subjects = new int[count];
+        int[] predicates = new int[count];
+        int[] objects = new int[count];
+        int i = 0;
+        for (Triple triple : facts) {
+            subjects[i] = dictionary.lookup(triple.s());
+            predicates[i] = dictionary.lookup(triple.p());
+            objects[i] = dictionary.lookup(triple.o());
+            i++;
+        }
+        int terms = dictionary.size();
+        int[] subjectOffsets = new int[terms + 1];
+        long[] predicateObjects = group(subjects, predicates, objects, subjectOffsets);
+        int[] objectOffsets = new int[terms + 1];
+        long[] predicateSubjects = group(objects, predicates, subjects, objectOffsets);
+        return new FactStore(dictionary, IntBuffer.wrap(subjectOffsets), LongBuffer.wrap(predicateObjects),
+                IntBuffer.wrap(objectOffsets), LongBuffer.wrap(predicateSubjects));
+    }
+
+    /**
+     * Counting sort of (second, third) pairs by the first key, then sort of each group, dropping duplicates
+     * since facts may come from more than one working memory.
+     */
+    private static long[] group(int[] keys, int[] seconds, int[] thirds, int[] offsets) {
+        for (int key : keys) {
+            offsets[key + 1]++;
+        }
+        for (int k = 1; k < offsets.length; k++) {
+            offsets[k] += offsets[k - 1];
+        }
+        int[] cursor = Arrays.copyOf(offsets, offsets.length - 1);
+        long[] pairs = new long[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            pairs[cursor[keys[i]]++] = pack(seconds[i], thirds[i]);
+        }
+        int n = 0;
+        int from = 0;
+        for (int k = 0; k < offsets.length - 1; k++) {
+            int to = offsets[k + 1];
+            if (to - from > 1) Arrays.sort(pairs, from, to);
+            offsets[k] = n;
+            for (int i = from; i < to; i++) {
+                if (i == from || pairs[i] != pairs[i - 1]) pairs[n++] = pairs[i];
+            }
+            from = to;
+        }
+        offsets[offsets.length - 1] = n;
+        return n == pairs.length ? pairs : Arrays.copyOf(pairs, n);
+    }
+
+    private static long pack(int high, int low) {
+        return ((long) high << 32) | (low & 0xffffffffL);
+    }
+
+    /**
+     * @return index of the first element in the sorted range which is not less than the value
+     */
+    private static int lowerBound(LongBuffer pairs, int from, int to, long value) {
+        while (from < to) {
+            int middle = (from + to) >>> 1;
+            if (pairs.get(middle) < value) from = middle + 1;
+            else to = middle;
+        }
+        return from;
+    }
+
+    private static int[] range(IntBuffer offsets, LongBuffer pairs, int key, int high) {
+        if (key < 0 || high < 0) return NONE;
+        int to = offsets.get(key + 1);
+        int start = lowerBound(pairs, offsets.get(key), to, pack(high, 0));
+        int end = start;
+        while (end < to && (int) (pairs.get(end) >>> 32) == high) end++;
+        if (end == start) return NONE;
+        int[] result = new int[end - start];
+        for (int i = start; i < end; i++) {
+            result[i - start] = (int) pairs.get(i);
+        }
+        return result;
+    }
+
+    int id(ConcreteNode term) {
+        return dictionary.lookup(term);
+    }
+
+    ConcreteNode term(int id) {
+        return dictionary.decode(id);
+    }
+
+    /**
+     * @return sorted IDs of all objects of the subject and predicate
+     */
+    int[] objects(int subject, int predicate) {
+        return range(subjectOffsets, predicateObjects, subject, predicate);
+    }
+
+    /**
+     * @return sorted IDs of all subjects of the predicate and object
+     */
+    int[] subjects(int predicate, int object) {
+        return range(objectOffsets, predicateSubjects, object, predicate);
+    }
+
+    int[] objects(ConcreteNode subject, ConcreteNode predicate) {
+        return objects(id(subject), id(predicate));
+    }
+
+    int[] subjects(ConcreteNode predicate, ConcreteNode object) {
+        return subjects(id(predicate), id(object));
+    }
+
+    /**
+     * @return the ID of the representative of the individual's equivalence class, which is the individual itself
+     * unless it was merged with another
+     */
+    int representative(int id) {
+        if (sameAs < 0 || id < 0) return id;
+        int[] targets = objects(id, sameAs);
+        for (int target : targets) {
+            if (target != id) return target;
+        }
+        return id;
+    }
+
+    /**
+     * @return sorted IDs of all members of the individual's equivalence class
+     */
+    int[] members(int id) {
+        if (id < 0) return NONE;
+        int representative = representative(id);
+        int[] members = sameAs < 0 ? NONE : subjects(sameAs, representative);
+        if (Arrays.binarySearch(members, representative) >= 0) return members;
+        int[] result = Arrays.copyOf(members, members.length + 1);
+        result[members.length] = representative;
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * @return sorted IDs of all members of the equivalence classes of the sorted representatives
+     */
+    int[] expand(int[] representatives) {
+        if (sameAs < 0 || representatives.length == 0) return representatives;
+        int[] result = null;
+        int n = 0;
+        for (int i = 0; i < representatives.length; i++) {
+            int[] members = subjects(sameAs, representatives[i]);
+            if (result == null) {
+                if (members.length == 0 || (members.length == 1 && members[0] == representatives[i])) continue;
+                result = Arrays.copyOf(representatives, representatives.length + members.length);
+                n = representatives.length;
+            }
+            if (n + members.length > result.length) result = Arrays.copyOf(result, Math.max(result.length * 2, n + members.length));
+            System.arraycopy(members, 0, result, n, members.length);
+            n += members.length;
+        }
+        if (result == null) return representatives;
+        Arrays.sort(result, 0, n);
+        int distinct = 0;
+        for (int i = 0; i < n; i++) {
+            if (i == 0 || result[i] != result[i - 1]) result[distinct++] = result[i];
+        }
+        return Arrays.copyOf(result, distinct);
+    }
+
+    /**
+     * @return the triple with subject and object replaced by their representatives
+     */
+    Triple canonical(Triple triple) {
+        int subject = id(triple.s());
+        int object = id(triple.o());
+        int subjectRepresentative = representative(subject);
+        int objectRepresentative = representative(object);
+        if (subjectRepresentative == subject && objectRepresentative == object) return triple;
+        else return new Triple((Resource) term(subjectRepresentative), triple.p(), term(objectRepresentative));
+    }
+
+    /**
+     * @return number of interned terms; IDs range from 0 to this value, exclusive
+     */
+    int termCount() {
+        return dictionary.size();
+    }
+
+    /**
+     * @return true if the term is the subject of at least one fact
+     */
+    boolean isSubject(int id) {
+        return id >= 0 && subjectOffsets.get(id + 1) > subjectOffsets.get(id);
+    }
+
+    /**
+     * @return sorted IDs of the distinct predicates of the subject
+     */
+    int[] predicates(int subject) {
+        if (subject < 0) return NONE;
+        int from = subjectOffsets.get(subject);
+        int to = subjectOffsets.get(subject + 1);
+        int[] result = new int[to - from];
+        int n = 0;
+        for (int i = from; i < to; i++) {
+            int predicate = (int) (predicateObjects.get(i) >>> 32);
+            if (n == 0 || result[n - 1] != predicate) result[n++] = predicate;
+        }
+        return n == result.length ? result : Arrays.copyOf(result, n);
+    }
+
+    boolean contains(Triple triple) {
+        int s = id(triple.s());
+        int p = id(triple.p());
+        int o = id(triple.o());
+        if (s < 0 || p < 0 || o < 0) return false;
+        int to = subjectOffsets.get(s + 1);
+        int i = lowerBound(predicateObjects, subjectOffsets.get(s), to, pack(p, o));
+        return i < to && predicateObjects.get(i) == pack(p, o);
+    }
+
+    int size() {
+        return predicateObjects.limit();
+    }
+
+    TermIndex terms() {
+        return dictionary;
+    }
+
+    IntBuffer subjectOffsets() {
+        return subjectOffsets.duplicate();
+    }
+
+    LongBuffer predicateObjects() {
+        return predicateObjects.duplicate();
+    }
+
+    IntBuffer objectOffsets() {
+        return objectOffsets.duplicate();
+    }
+
+    LongBuffer predicateSubjects() {
+        return predicateSubjects.duplicate();
+    }
+
+    /**
+     * @return elements present in both sorted arrays
+     */
+    static int[] intersection(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int n = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) i++;
+            else if (a[i] > b[j]) j++;
+            else {
+                result[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return n == result.length ? result : Arrays.copyOf(result, n);
+    }
+
+    /**
+     * @return elements of sorted array {@code ids} not present in sorted array {@code excluded}
+     */
+    static int[] difference(int[] ids, int[] excluded) {
+        if (excluded.length == 0) return ids;
+        int[] result = new int[ids.length];
+        int n = 0;
+        int j = 0;
+        for (int id : ids) {
+            while (j < excluded.length && excluded[j] < id) j++;
+            if (j >= excluded.length || excluded[j] != id) result[n++] = id;
+        }
+        return n == ids.length ? ids : Arrays.copyOf(result, n);
+    }
+
+}
@@ -0,0 +1,73 @@
+package org.geneontology.arachne;
+
+import org.geneontology.rules.engine.Rule;
+import org.geneontology.rules.engine.Triple;
+import org.geneontology.rules.engine.URI;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLClass;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Everything a realization needs to know about the ontology, captured when {@link ArachneProtegeReasoner#flush()}
+ * is called. Realization may then run on another thread without reading the ontology while it is being edited.
+ */
+final class FlushRequest {
+
+    /**
+     * Logical Tbox and Rbox axioms of the imports closure, or null if the Tbox has not changed.
+     */
+    final Set<OWLAxiom> ruleAxioms;
+
+    /**
+     * Indirect type rules for the current class hierarchy, or null if the Tbox has not changed.
+     */
+    final Set<Rule> indirectRules;
+
+    final boolean dataChanged;
+
+    /**
+     * Triples of assertions removed since the last flush which are no longer asserted by any axiom.
+     */
+    final Set<Triple> removedTriples;
+
+    /**
+     * Triples of assertions added since the last flush.
+     */
+    final Set<Triple> addedTriples;
+
+    /**
+     * All class and object property assertions of the ontology, for a full realization, or null if a background
+     * realization is expected to only push the added and removed triples into the existing working memories.
+     */
+    final Supplier<Collection<OWLAxiom>> assertions;
+
+    /**
+     * Classes and properties used by the Abox, to prune the rule engine to, or null if rules are not pruned.
+     */
+    final Set<URI> aboxVocabulary;
+
+    /**
+     * Told class hierarchy after the changes, for the direct types of the realized facts.
+     */
+    final HierarchyIndex.View<OWLClass> classes;
+
+    FlushRequest(Set<OWLAxiom> ruleAxioms, Set<Rule> indirectRules, boolean dataChanged, Set<Triple> removedTriples, Set<Triple> addedTriples, Supplier<Collection<OWLAxiom>> assertions, Set<URI> aboxVocabulary,
+                 HierarchyIndex.View<OWLClass> classes) {
+        this.ruleAxioms = ruleAxioms;
+        this.indirectRules = indirectRules;
+        this.dataChanged = dataChanged;
+        this.removedTriples = removedTriples;
+        this.addedTriples = addedTriples;
+        this.assertions = assertions;
+        this.aboxVocabulary = aboxVocabulary;
+        this.classes = classes;
+    }
+
+    boolean rulesChanged() {
+        return ruleAxioms != null;
+    }
+
+}
@@ -0,0 +1,594 @@
+package org.geneontology.arachne;
+
+import org.semanticweb.owlapi.model.OWLObject;
+import org.semanticweb.owlapi.reasoner.Node;
+import org.semanticweb.owlapi.reasoner.NodeSet;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Told hierarchy of one kind of named entity, from subsumption and equivalence axioms between named entities.
+ * Entities which are told to subsume each other, directly or transitively, are collapsed into one node.
+ * <p>
+ * The told edges are updated as axioms are added and removed, and the nodes, their direct edges and their ancestors
+ * with them: an edge which merges no nodes, an edge still implied by the others, and an entity with no edges are applied
+ * in place. Any other update drops the nodes, which are rebuilt on the next query. Descendants are computed per node
+ * on demand and cached until the next update. A {@link View} keeps the hierarchy as it was when taken, so the nodes
+ * are copied before an update once one has been taken.
+ * <p>
+ * As with the structural reasoner, every entity is subsumed by the top entity and subsumes the bottom entity,
+ * and an entity told to be subsumed by the bottom entity is in the bottom node.
+ */
+final class HierarchyIndex<E extends OWLObject> {
+
+    /**
+     * A state of the hierarchy, unaffected by later updates.
+     */
+    interface View<E> {
+
+        /**
+         * @return true if the entity strictly subsumes any of the others: it is one of their ancestors and not
+         * equivalent to it. Entities not in the signature subsume nothing.
+         */
+        boolean subsumesAny(E entity, Collection<? extends E> others);
+
+        static <E> View<E> empty() {
+            return (entity, others) -> false;
+        }
+
+    }
+
+    private final E top;
+    private final E bottom;
+    private final Supplier<Set<? extends E>> signature;
+    private final Function<Set<E>, Node<E>> nodeFactory;
+    private final Function<Set<Node<E>>, NodeSet<E>> nodeSetFactory;
+
+    /**
+     * Told superentities of each entity, with the number of axioms telling each edge
+     */
+    private final Map<E, Map<E, Integer>> told = new HashMap<>();
+
+    private Graph graph = null;
+
+    /**
+     * Whether the graph is held by a view, and must be copied before it is updated
+     */
+    private boolean shared = false;
+
+    /**
+     * @param signature entities of this kind in the ontology, read when the nodes are rebuilt
+     */
+    HierarchyIndex(E top, E bottom, Supplier<Set<? extends E>> signature,
+                   Function<Set<E>, Node<E>> nodeFactory, Function<Set<Node<E>>, NodeSet<E>> nodeSetFactory) {
+        this.top = top;
+        this.bottom = bottom;
+        this.signature = signature;
+        this.nodeFactory = nodeFactory;
+        this.nodeSetFactory = nodeSetFactory;
+    }
+
+    synchronized void addEdge(E sub, E sup) {
+        if (sub.equals(sup)) return;
+        // An edge told again changes nothing
+        if (told.computeIfAbsent(sub, k -> new HashMap<>()).merge(sup, 1, Integer::sum) > 1 || graph == null) return;
+        if (!writableGraph().addEdge(sub, sup)) graph = null;
+    }
+
+    synchronized void removeEdge(E sub, E sup) {
+        Map<E, Integer> supers = told.get(sub);
+        if (supers == null || !supers.containsKey(sup)) return;
+        // An edge still told by another axiom changes nothing
+        if (supers.merge(sup, -1, Integer::sum) > 0) return;
+        supers.remove(sup);
+        if (supers.isEmpty()) told.remove(sub);
+        if (graph != null && !graph.impliedWithout(sub, sup)) graph = null;
+    }
+
+    synchronized void clear() {
+        told.clear();
+        graph = null;
+    }
+
+    /**
+     * Notes an entity now in the signature, which is a new root if the nodes were built without it.
+     */
+    synchronized void entityAdded(E entity) {
+        if (graph != null && !graph.nodeOf.containsKey(entity)) writableGraph().addRoot(entity);
+    }
+
+    /**
+     * Notes an entity no longer in the signature.
+     */
+    synchronized void entityRemoved(E entity) {
+        if (graph == null || !graph.nodeOf.containsKey(entity) || entity.equals(top) || entity.equals(bottom)) return;
+        if (graph.isLoneRoot(entity)) writableGraph().removeRoot(entity);
+        else graph = null;
+    }
+
+    /**
+     * @return the hierarchy as it is now, unaffected by later updates
+     */
+    synchronized View<E> view() {
+        Graph current = graph();
+        shared = true;
+        return current;
+    }
+
+    synchronized Node<E> topNode() {
+        Graph current = graph();
+        return current.nodes[current.top];
+    }
+
+    synchronized Node<E> bottomNode() {
+        Graph current = graph();
+        return current.nodes[current.bottom];
+    }
+
+    synchronized Node<E> equivalents(E entity) {
+        Graph current = graph();
+        Integer node = current.nodeOf.get(entity);
+        return node != null ? current.nodes[node] : nodeFactory.apply(Collections.singleton(entity));
+    }
+
+    synchronized NodeSet<E> supers(E entity, boolean direct) {
+        Graph current = graph();
+        Integer node = current.nodeOf.get(entity);
+        if (node == null) return current.nodeSet(new int[]{current.top});
+        if (node == current.bottom) {
+            return current.nodeSet(direct ? current.directSupers[node] : current.liveNodes(current.bottom));
+        }
+        return current.nodeSet(direct ? current.directSupers[node] : current.ancestors[node]);
+    }
+
+    synchronized NodeSet<E> subs(E entity, boolean direct) {
+        Graph current = graph();
+        Integer node = current.nodeOf.get(entity);
+        if (node == null) return current.nodeSet(new int[]{current.bottom});
+        return current.nodeSet(direct ? current.directSubs[node] : current.descendants(node));
+    }
+
+    private Graph graph() {
+        if (graph == null) {
+            graph = new Graph();
+            shared = false;
+        }
+        return graph;
+    }
+
+    /**
+     * @return the graph, copied first if a view holds it
+     */
+    private Graph writableGraph() {
+        if (shared) {
+            graph = new Graph(graph);
+            shared = false;
+        }
+        return graph;
+    }
+
+    /**
+     * Nodes and edges of the hierarchy. Updates replace the arrays of a node rather than writing into them,
+     * so a copy may share them with the original.
+     */
+    private final class Graph implements View<E> {
+
+        final Map<E, Integer> nodeOf;
+
+        /**
+         * Indexed by component, followed by nodes added since; null for a component merged into the bottom node,
+         * a removed node, or spare capacity
+         */
+        Node<E>[] nodes;
+        int[][] directSupers;
+        int[][] directSubs;
+
+        /**
+         * Sorted strict ancestors of each node, excluding the bottom node, whose ancestors are all other nodes
+         */
+        int[][] ancestors;
+        int[][] descendants;
+        int size;
+        final int top;
+        final int bottom;
+
+        @SuppressWarnings("unchecked")
+        Graph() {
+            nodeOf = new HashMap<>();
+            List<E> entities = new ArrayList<>();
+            Map<E, Integer> index = new HashMap<>();
+            indexOf(HierarchyIndex.this.top, entities, index);
+            indexOf(HierarchyIndex.this.bottom, entities, index);
+            for (E entity : signature.get()) {
+                indexOf(entity, entities, index);
+            }
+            for (Map.Entry<E, Map<E, Integer>> entry : told.entrySet()) {
+                indexOf(entry.getKey(), entities, index);
+                for (E sup : entry.getValue().keySet()) {
+                    indexOf(sup, entities, index);
+                }
+            }
+            int[][] successors = new int[entities.size()][];
+            for (int i = 0; i < successors.length; i++) {
+                Map<E, Integer> supers = told.getOrDefault(entities.get(i), Collections.emptyMap());
+                int[] edges = new int[supers.size() + (i == 0 ? 0 : 1)];
+                int n = 0;
+                for (E sup : supers.keySet()) {
+                    edges[n++] = index.get(sup);
+                }
+                // Everything is subsumed by the top entity, which has index 0
+                if (i != 0) edges[n] = 0;
+                successors[i] = edges;
+            }
+            int[] component = components(successors);
+            int count = 0;
+            for (int c : component) {
+                count = Math.max(count, c + 1);
+            }
+            List<Set<Integer>> componentSuccessors = new ArrayList<>(count);
+            for (int c = 0; c < count; c++) {
+                componentSuccessors.add(new HashSet<>());
+            }
+            for (int i = 0; i < successors.length; i++) {
+                for (int sup : successors[i]) {
+                    if (component[sup] != component[i]) componentSuccessors.get(component[i]).add(component[sup]);
+                }
+            }
+            // Components are numbered so that the ancestors of a component are numbered below it
+            ancestors = new int[count][];
+            int[] seen = new int[count];
+            Arrays.fill(seen, -1);
+            for (int c = 0; c < count; c++) {
+                List<Integer> reached = new ArrayList<>();
+                for (int sup : componentSuccessors.get(c)) {
+                    if (seen[sup] != c) {
+                        seen[sup] = c;
+                        reached.add(sup);
+                    }
+                    for (int ancestor : ancestors[sup]) {
+                        if (seen[ancestor] != c) {
+                            seen[ancestor] = c;
+                            reached.add(ancestor);
+                        }
+                    }
+                }
+                ancestors[c] = reached.stream().mapToInt(Integer::intValue).sorted().toArray();
+            }
+            top = component[0];
+            bottom = component[1];
+            int[] nodeOfComponent = new int[count];
+            for (int c = 0; c < count; c++) {
+                nodeOfComponent[c] = c == bottom || Arrays.binarySearch(ancestors[c], bottom) >= 0 ? bottom : c;
+            }
+            List<Set<E>> nodeMembers = new ArrayList<>(count);
+            for (int c = 0; c < count; c++) {
+                nodeMembers.add(new HashSet<>());
+            }
+            for (int i = 0; i < successors.length; i++) {
+                int node = nodeOfComponent[component[i]];
+                nodeOf.put(entities.get(i), node);
+                nodeMembers.get(node).add(entities.get(i));
+            }
+            nodes = (Node<E>[]) new Node[count];
+            directSupers = new int[count][];
+            List<List<Integer>> subs = new ArrayList<>(count);
+            for (int c = 0; c < count; c++) {
+                subs.add(new ArrayList<>());
+            }
+            for (int c = 0; c < count; c++) {
+                if (nodeOfComponent[c] != c) continue;
+                nodes[c] = nodeFactory.apply(nodeMembers.get(c));
+                if (c == bottom) continue;
+                int[] candidates = componentSuccessors.get(c).stream().mapToInt(Integer::intValue).toArray();
+                List<Integer> direct = new ArrayList<>();
+                for (int candidate : candidates) {
+                    if (!isAncestorOfAny(candidate, candidates)) {
+                        direct.add(candidate);
+                        subs.get(candidate).add(c);
+                    }
+                }
+                directSupers[c] = direct.stream().mapToInt(Integer::intValue).toArray();
+            }
+            List<Integer> leaves = new ArrayList<>();
+            for (int c = 0; c < count; c++) {
+                if (nodes[c] != null && c != bottom && subs.get(c).isEmpty()) {
+                    leaves.add(c);
+                    subs.get(c).add(bottom);
+                }
+            }
+            directSupers[bottom] = leaves.stream().mapToInt(Integer::intValue).toArray();
+            directSubs = new int[count][];
+            for (int c = 0; c < count; c++) {
+                if (nodes[c] != null) directSubs[c] = subs.get(c).stream().mapToInt(Integer::intValue).toArray();
+            }
+            descendants = new int[count][];
+            size = count;
+        }
+
+        Graph(Graph other) {
+            nodeOf = new HashMap<>(other.nodeOf);
+            nodes = other.nodes.clone();
+            directSupers = other.directSupers.clone();
+            directSubs = other.directSubs.clone();
+            ancestors = other.ancestors.clone();
+            descendants = new int[nodes.length][];
+            size = other.size;
+            top = other.top;
+            bottom = other.bottom;
+        }
+
+        @Override
+        public boolean subsumesAny(E entity, Collection<? extends E> others) {
+            Integer node = nodeOf.get(entity);
+            if (node == null) return false;
+            for (E other : others) {
+                Integer sub = nodeOf.get(other);
+                if (sub == null || sub.equals(node)) continue;
+                if (sub == bottom || Arrays.binarySearch(ancestors[sub], node) >= 0) return true;
+            }
+            return false;
+        }
+
+        /**
+         * Applies a told edge in place, unless it merges nodes.
+         *
+         * @return false if the graph must be rebuilt
+         */
+        boolean addEdge(E sub, E sup) {
+            int s = nodeOf.containsKey(sub) ? nodeOf.get(sub) : addRoot(sub);
+            int p = nodeOf.containsKey(sup) ? nodeOf.get(sup) : addRoot(sup);
+            if (s == p || s == bottom || Arrays.binarySearch(ancestors[s], p) >= 0) return true;
+            // A cycle merges nodes, as does an edge from the top node or to the bottom node
+            if (s == top || p == bottom || Arrays.binarySearch(ancestors[p], s) >= 0) return false;
+            int[] gained = union(ancestors[p], new int[]{p});
+            int[] below = strictDescendants(s);
+            ancestors[s] = union(ancestors[s], gained);
+            for (int d : below) {
+                ancestors[d] = union(ancestors[d], gained);
+            }
+            // The new ancestors may subsume direct superentities told below them
+            setDirectSupers(s, minimal(append(directSupers[s], p)));
+            for (int d : below) {
+                if (directSupers[d].length > 1) setDirectSupers(d, minimal(directSupers[d]));
+            }
+            descendants = new int[nodes.length][];
+            return true;
+        }
+
+        /**
+         * @return true if the nodes and edges are unchanged by the removal of a told edge: another told edge joins
+         * the same nodes, or the superentity remains an ancestor through a direct superentity
+         */
+        boolean impliedWithout(E sub, E sup) {
+            Integer s = nodeOf.get(sub);
+            Integer p = nodeOf.get(sup);
+            if (s == null || p == null || s.equals(p) || s == bottom || p == bottom) return false;
+            if (p == top || Arrays.stream(directSupers[s]).noneMatch(d -> d == p)) return true;
+            for (E member : nodes[s].getEntities()) {
+                for (E other : told.getOrDefault(member, Collections.emptyMap()).keySet()) {
+                    if (p.equals(nodeOf.get(other))) return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * @return the node of an entity added directly below the top node
+         */
+        int addRoot(E entity) {
+            if (size == nodes.length) {
+                int capacity = size * 2;
+                nodes = Arrays.copyOf(nodes, capacity);
+                directSupers = Arrays.copyOf(directSupers, capacity);
+                directSubs = Arrays.copyOf(directSubs, capacity);
+                ancestors = Arrays.copyOf(ancestors, capacity);
+            }
+            int node = size++;
+            nodes[node] = nodeFactory.apply(Collections.singleton(entity));
+            nodeOf.put(entity, node);
+            ancestors[node] = new int[]{top};
+            directSupers[node] = new int[0];
+            directSubs[node] = new int[]{bottom};
+            directSupers[bottom] = append(directSupers[bottom], node);
+            setDirectSupers(node, new int[]{top});
+            descendants = new int[nodes.length][];
+            return node;
+        }
+
+        /**
+         * @return true if the entity is alone in its node, with no edges but those to the top and bottom nodes
+         */
+        boolean isLoneRoot(E entity) {
+            int node = nodeOf.get(entity);
+            return node != top && node != bottom && nodes[node].getSize() == 1 && !told.containsKey(entity)
+                    && Arrays.equals(directSupers[node], new int[]{top}) && Arrays.equals(directSubs[node], new int[]{bottom});
+        }
+
+        void removeRoot(E entity) {
+            int node = nodeOf.remove(entity);
+            setDirectSupers(node, new int[0]);
+            directSupers[bottom] = Arrays.stream(directSupers[bottom]).filter(leaf -> leaf != node).toArray();
+            nodes[node] = null;
+            directSubs[node] = null;
+            descendants = new int[nodes.length][];
+        }
+
+        /**
+         * Replaces the direct superentities of a node, updating the direct subentities of the old and new ones,
+         * and the nodes directly above the bottom node.
+         */
+        private void setDirectSupers(int node, int[] supers) {
+            int[] old = directSupers[node];
+            for (int sup : old) {
+                if (Arrays.stream(supers).anyMatch(s -> s == sup)) continue;
+                int[] subs = Arrays.stream(directSubs[sup]).filter(sub -> sub != node).toArray();
+                if (subs.length == 0) {
+                    subs = new int[]{bottom};
+                    directSupers[bottom] = append(directSupers[bottom], sup);
+                }
+                directSubs[sup] = subs;
+            }
+            for (int sup : supers) {
+                if (Arrays.stream(old).anyMatch(s -> s == sup)) continue;
+                if (Arrays.equals(directSubs[sup], new int[]{bottom})) {
+                    directSubs[sup] = new int[]{node};
+                    directSupers[bottom] = Arrays.stream(directSupers[bottom]).filter(leaf -> leaf != sup).toArray();
+                } else {
+                    directSubs[sup] = append(directSubs[sup], node);
+                }
+            }
+            directSupers[node] = supers;
+        }
+
+        /**
+         * @return the candidates which are not ancestors of another candidate
+         */
+        private int[] minimal(int[] candidates) {
+            return Arrays.stream(candidates).filter(candidate -> !isAncestorOfAny(candidate, candidates)).toArray();
+        }
+
+        /**
+         * @return the descendants of the node, apart from the bottom node
+         */
+        private int[] strictDescendants(int node) {
+            return Arrays.stream(descendants(node)).filter(d -> d != bottom).toArray();
+        }
+
+        private boolean isAncestorOfAny(int candidate, int[] candidates) {
+            for (int other : candidates) {
+                if (other != candidate && Arrays.binarySearch(ancestors[other], candidate) >= 0) return true;
+            }
+            return false;
+        }
+
+        int[] descendants(int node) {
+            if (descendants[node] == null) {
+                Set<Integer> reached = new HashSet<>();
+                Deque<Integer> queue = new ArrayDeque<>();
+                for (int sub : directSubs[node]) {
+                    queue.add(sub);
+                }
+                while (!queue.isEmpty()) {
+                    int next = queue.pop();
+                    if (reached.add(next)) {
+                        for (int sub : directSubs[next]) {
+                            queue.add(sub);
+                        }
+                    }
+                }
+                descendants[node] = reached.stream().mapToInt(Integer::intValue).toArray();
+            }
+            return descendants[node];
+        }
+
+        int[] liveNodes(int excluded) {
+            List<Integer> live = new ArrayList<>();
+            for (int c = 0; c < nodes.length; c++) {
+                if (nodes[c] != null && c != excluded) live.add(c);
+            }
+            return live.stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        NodeSet<E> nodeSet(int[] ids) {
+            Set<Node<E>> result = new HashSet<>();
+            for (int id : ids) {
+                result.add(nodes[id]);
+            }
+            return nodeSetFactory.apply(result);
+        }
+
+    }
+
+    /**
+     * @return the sorted union of two sorted arrays without duplicates
+     */
+    private static int[] union(int[] a, int[] b) {
+        int[] merged = new int[a.length + b.length];
+        int i = 0;
+        int j = 0;
+        int n = 0;
+        while (i < a.length || j < b.length) {
+            int next = j == b.length || (i < a.length && a[i] <= b[j]) ? a[i++] : b[j++];
+            if (n == 0 || merged[n - 1] != next) merged[n++] = next;
+        }
+        return Arrays.copyOf(merged, n);
+    }
+
+    private static int[] append(int[] array, int value) {
+        int[] appended = Arrays.copyOf(array, array.length + 1);
+        appended[array.length] = value;
+        return appended;
+    }
+
+    private static <E> void indexOf(E entity, List<E> entities, Map<E, Integer> index) {
+        if (!index.containsKey(entity)) {
+            index.put(entity, entities.size());
+            entities.add(entity);
+        }
+    }
+
+    /**
+     * Tarjan's algorithm, without recursion.
+     *
+     * @return the strongly connected component of each vertex, numbered so that every component reachable
+     * from another is numbered below it
+     */
+    private static int[] components(int[][] successors) {
+        int size = successors.length;
+        int[] index = new int[size];
+        int[] low = new int[size];
+        int[] component = new int[size];
+        Arrays.fill(index, -1);
+        int[] stack = new int[size];
+        boolean[] onStack = new boolean[size];
+        int[] pathVertex = new int[size];
+        int[] pathEdge = new int[size];
+        int stackSize = 0;
+        int counter = 0;
+        int components = 0;
+        for (int root = 0; root < size; root++) {
+            if (index[root] >= 0) continue;
+            int depth = 0;
+            pathVertex[0] = root;
+            pathEdge[0] = 0;
+            index[root] = low[root] = counter++;
+            stack[stackSize++] = root;
+            onStack[root] = true;
+            while (depth >= 0) {
+                int v = pathVertex[depth];
+                if (pathEdge[depth] < successors[v].length) {
+                    int w = successors[v][pathEdge[depth]++];
+                    if (index[w] < 0) {
+                        index[w] = low[w] = counter++;
+                        stack[stackSize++] = w;
+                        onStack[w] = true;
+                        depth++;
+                        pathVertex[depth] = w;
+                        pathEdge[depth] = 0;
+                    } else if (onStack[w]) {
+                        low[v] = Math.min(low[v], index[w]);
+                    }
+                } else {
+                    if (low[v] == index[v]) {
+                        int w;
+                        do {
+                            w = stack[--stackSize];
+                            onStack[w] = false;
+                            component[w] = components;
+                        } while (w != v);
+                        components++;
+                    }
+                    depth--;
+                    if (depth >= 0) {
+                        int parent = pathVertex[depth];
+                        low[parent] = Math.min(low[parent], low[v]);
+                    }
+                }
+            }
+        }
+        return component;
+    }
+
+}
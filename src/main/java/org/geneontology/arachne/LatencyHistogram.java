@@ -0,0 +1,60 @@
+package org.geneontology.arachne;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of durations in power-of-two nanosecond buckets. Percentiles are reported as the
+ * upper bound of the bucket they fall in, so they are accurate to within a factor of two.
+ */
+final class LatencyHistogram {
+
+    private final AtomicLongArray buckets = new AtomicLongArray(65);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(nanos));
+        count.incrementAndGet();
+        total.addAndGet(nanos);
+        long previous = max.get();
+        while (nanos > previous && !max.compareAndSet(previous, nanos)) {
+            previous = max.get();
+        }
+    }
+
+    long count() {
+        return count.get();
+    }
+
+    long totalNanos() {
+        return total.get();
+    }
+
+    long maxNanos() {
+        return max.get();
+    }
+
+    double meanNanos() {
+        long n = count.get();
+        return n == 0 ? 0 : (double) total.get() / n;
+    }
+
+    /**
+     * @param fraction between 0 and 1, e.g. 0.99 for the 99th percentile
+     */
+    long percentileNanos(double fraction) {
+        long n = count.get();
+        if (n == 0) return 0;
+        long rank = (long) Math.ceil(fraction * n);
+        long seen = 0;
+        for (int b = 0; b < buckets.length(); b++) {
+            seen += buckets.get(b);
+            if (seen >= rank) return b == 0 ? 0 : Math.min(max.get(), b == 64 ? Long.MAX_VALUE : (1L << b) - 1);
+        }
+        return max.get();
+    }
+
+}
@@ -0,0 +1,23 @@
+package org.geneontology.arachne;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Map evicting its least recently accessed entry beyond a fixed capacity. Not thread-safe.
+ */
+final class LruCache<K, V> extends LinkedHashMap<K, V> {
+
+    private final int capacity;
+
+    LruCache(int capacity) {
+        super(16, 0.75f, true);
+        this.capacity = capacity;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+        return size() > capacity;
+    }
+
+}
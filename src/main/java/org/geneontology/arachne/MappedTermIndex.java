@@ -0,0 +1,167 @@
+package org.geneontology.arachne;
+
+import org.geneontology.rules.engine.BlankNode;
+import org.geneontology.rules.engine.ConcreteNode;
+import org.geneontology.rules.engine.Literal;
+import org.geneontology.rules.engine.URI;
+import scala.Option;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Term index read from a memory-mapped {@link MaterializationStore} file. Terms are stored as encoded bytes
+ * with an offset table for decoding and a table of (hash, ID) pairs sorted by hash for lookup.
+ * Only a bounded number of decoded terms and looked-up IDs are kept on the heap.
+ */
+final class MappedTermIndex implements TermIndex {
+
+    private static final byte KIND_URI = 0;
+    private static final byte KIND_BLANK = 1;
+    private static final byte KIND_LITERAL = 2;
+
+    private final int size;
+    private final LongBuffer offsets;
+    private final LongBuffer hashes;
+    private final ByteBuffer data;
+    private final LruCache<Integer, ConcreteNode> decoded;
+    private final LruCache<ConcreteNode, Integer> ids;
+
+    /**
+     * @param offsets start of each term in the data, plus the end of the last term
+     * @param hashes  sorted (hash, ID) pairs packed into longs
+     */
+    MappedTermIndex(int size, LongBuffer offsets, LongBuffer hashes, ByteBuffer data, int cacheSize) {
+        this.size = size;
+        this.offsets = offsets;
+        this.hashes = hashes;
+        this.data = data;
+        this.decoded = new LruCache<>(cacheSize);
+        this.ids = new LruCache<>(cacheSize);
+    }
+
+    @Override
+    public int lookup(ConcreteNode term) {
+        synchronized (ids) {
+            Integer id = ids.get(term);
+            if (id != null) return id;
+        }
+        byte[] bytes = encode(term);
+        int hash = Arrays.hashCode(bytes);
+        int from = 0;
+        int to = size;
+        long start = (long) hash << 32;
+        while (from < to) {
+            int middle = (from + to) >>> 1;
+            if (hashes.get(middle) < start) from = middle + 1;
+            else to = middle;
+        }
+        int found = ABSENT;
+        for (int i = from; i < size && (int) (hashes.get(i) >>> 32) == hash; i++) {
+            int candidate = (int) hashes.get(i);
+            if (Arrays.equals(bytes, bytes(candidate))) {
+                found = candidate;
+                break;
+            }
+        }
+        if (found != ABSENT) {
+            synchronized (ids) {
+                ids.put(term, found);
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public ConcreteNode decode(int id) {
+        synchronized (decoded) {
+            ConcreteNode term = decoded.get(id);
+            if (term != null) return term;
+        }
+        ConcreteNode term = decode(ByteBuffer.wrap(bytes(id)));
+        synchronized (decoded) {
+            decoded.put(id, term);
+        }
+        return term;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    private byte[] bytes(int id) {
+        long from = offsets.get(id);
+        long to = offsets.get(id + 1);
+        byte[] bytes = new byte[(int) (to - from)];
+        ByteBuffer view = data.duplicate();
+        view.position((int) from);
+        view.get(bytes);
+        return bytes;
+    }
+
+    static byte[] encode(ConcreteNode term) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            if (term instanceof URI) {
+                out.writeByte(KIND_URI);
+                writeString(out, ((URI) term).uri());
+            } else if (term instanceof BlankNode) {
+                out.writeByte(KIND_BLANK);
+                writeString(out, ((BlankNode) term).id());
+            } else if (term instanceof Literal) {
+                Literal literal = (Literal) term;
+                out.writeByte(KIND_LITERAL);
+                writeString(out, literal.lexicalForm());
+                writeString(out, literal.datatype().uri());
+                writeString(out, literal.lang().isDefined() ? literal.lang().get() : null);
+            } else {
+                throw new IllegalArgumentException("Unsupported term: " + term);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static ConcreteNode decode(ByteBuffer in) {
+        byte kind = in.get();
+        switch (kind) {
+            case KIND_URI:
+                return new URI(readString(in));
+            case KIND_BLANK:
+                return new BlankNode(readString(in));
+            case KIND_LITERAL:
+                String lexicalForm = readString(in);
+                URI datatype = new URI(readString(in));
+                return new Literal(lexicalForm, datatype, Option.apply(readString(in)));
+            default:
+                throw new IllegalStateException("Corrupt term of kind " + kind);
+        }
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,251 @@
+package org.geneontology.arachne;
+
+import org.geneontology.rules.engine.Triple;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Local disk store of realized {@link FactStore}s, keyed by the Tbox rule fingerprint and the asserted Abox triples.
+ * Stored facts are memory-mapped rather than read into the heap, so an Abox whose materialization exceeds the heap
+ * can still be queried; only a bounded cache of decoded terms is held by each {@link MappedTermIndex}.
+ * <p>
+ * A file holds a fixed header followed by the fact layouts of {@link FactStore} and the encoded terms.
+ * Each section is mapped separately and must be smaller than 2GB; realizations with a larger section are not stored.
+ * Any unreadable entry is treated as a miss and deleted. Beyond the size limit of the directory, the least recently
+ * used entries are deleted.
+ */
+final class MaterializationStore {
+
+    private static final long MAGIC = 0x4152414348464354L;
+
+    /**
+     * Bump when the file layout or term encoding changes, so stale entries are ignored.
+     */
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = Long.BYTES + Integer.BYTES * 3 + Long.BYTES;
+
+    private static final Logger logger = LoggerFactory.getLogger(MaterializationStore.class);
+
+    private static final String SUFFIX = ".facts";
+
+    private final File directory;
+    private final int termCacheSize;
+    private final long sizeLimit;
+
+    /**
+     * @param termCacheSize maximum number of decoded terms, and of term IDs, kept on the heap per loaded store
+     * @param sizeLimit     maximum total size in bytes of the entries kept in the directory
+     */
+    MaterializationStore(File directory, int termCacheSize, long sizeLimit) {
+        this.directory = directory;
+        this.termCacheSize = termCacheSize;
+        this.sizeLimit = sizeLimit;
+    }
+
+    /**
+     * Key for the realization of the asserted triples under the rules with the given fingerprint.
+     * Independent of the order of the triples, which should be distinct.
+     */
+    static String key(String ruleFingerprint, Iterable<Triple> asserted) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            long sum = 0;
+            long count = 0;
+            for (Triple triple : asserted) {
+                digest.update(MappedTermIndex.encode(triple.s()));
+                digest.update(MappedTermIndex.encode(triple.p()));
+                digest.update(MappedTermIndex.encode(triple.o()));
+                sum += ByteBuffer.wrap(digest.digest()).getLong();
+                count++;
+            }
+            digest.update((VERSION + "|" + ruleFingerprint + "|" + count + "|" + sum).getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required by the Java platform", e);
+        }
+    }
+
+    /**
+     * @return the stored facts mapped from disk, or null if there is no usable entry for the key
+     */
+    FactStore load(String key) {
+        File file = fileFor(key);
+        if (!file.isFile()) return null;
+        FactStore loaded = null;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) {
+                logger.warn("Deleting truncated materialization " + file);
+                return null;
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if (header.getLong() != MAGIC || header.getInt() != VERSION) {
+                logger.info("Deleting materialization of another version " + file);
+                return null;
+            }
+            int terms = header.getInt();
+            int facts = header.getInt();
+            long termDataSize = header.getLong();
+            long expected = HEADER_SIZE + 2L * (terms + 1) * Integer.BYTES + 2L * facts * Long.BYTES
+                    + (2L * terms + 1) * Long.BYTES + termDataSize;
+            if (channel.size() != expected) {
+                logger.warn("Deleting truncated materialization " + file);
+                return null;
+            }
+            long[] position = {HEADER_SIZE};
+            IntBuffer subjectOffsets = map(channel, position, (terms + 1L) * Integer.BYTES).asIntBuffer();
+            IntBuffer objectOffsets = map(channel, position, (terms + 1L) * Integer.BYTES).asIntBuffer();
+            LongBuffer predicateObjects = map(channel, position, (long) facts * Long.BYTES).asLongBuffer();
+            LongBuffer predicateSubjects = map(channel, position, (long) facts * Long.BYTES).asLongBuffer();
+            LongBuffer termOffsets = map(channel, position, (terms + 1L) * Long.BYTES).asLongBuffer();
+            LongBuffer termHashes = map(channel, position, (long) terms * Long.BYTES).asLongBuffer();
+            ByteBuffer termData = map(channel, position, termDataSize);
+            MappedTermIndex index = new MappedTermIndex(terms, termOffsets, termHashes, termData, termCacheSize);
+            loaded = new FactStore(index, subjectOffsets, predicateObjects, objectOffsets, predicateSubjects);
+        } catch (IOException | IllegalArgumentException e) {
+            logger.warn("Deleting unreadable materialization " + file, e);
+        } finally {
+            // Unusable entries would otherwise stay in the directory forever, as nothing overwrites them
+            if (loaded == null) file.delete();
+        }
+        // Marks the entry as recently used for eviction
+        if (loaded != null) file.setLastModified(System.currentTimeMillis());
+        return loaded;
+    }
+
+    /**
+     * Deletes the entry for the key, if any.
+     */
+    void delete(String key) {
+        File file = fileFor(key);
+        if (file.exists() && !file.delete()) logger.warn("Unable to delete materialization " + file);
+    }
+
+    /**
+     * Writes the facts under the key, deleting the entry they supersede and then the least recently used entries
+     * beyond the size limit.
+     *
+     * @param superseded key of the entry replaced by this one, or null
+     * @return the written facts mapped from disk, or the given facts if they could not be written
+     */
+    FactStore store(String key, FactStore facts, String superseded) {
+        if (superseded != null && !superseded.equals(key)) delete(superseded);
+        File file = fileFor(key);
+        File temp = null;
+        try {
+            Files.createDirectories(directory.toPath());
+            temp = File.createTempFile(key, ".tmp", directory);
+            write(facts, temp);
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("Unable to write materialization " + file, e);
+            return facts;
+        } finally {
+            if (temp != null && temp.exists()) temp.delete();
+        }
+        evict(file);
+        FactStore stored = load(key);
+        return stored != null ? stored : facts;
+    }
+
+    /**
+     * Deletes the least recently used entries, other than the given one, until the directory is within the size limit.
+     */
+    private void evict(File keep) {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+        if (files == null) return;
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        if (total <= sizeLimit) return;
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (File file : files) {
+            if (total <= sizeLimit) break;
+            if (file.equals(keep)) continue;
+            long length = file.length();
+            if (file.delete()) {
+                total -= length;
+                logger.info("Evicted materialization " + file);
+            }
+        }
+    }
+
+    private static void write(FactStore facts, File file) throws IOException {
+        TermIndex terms = facts.terms();
+        int termCount = terms.size();
+        long[] termOffsets = new long[termCount + 1];
+        long[] termHashes = new long[termCount];
+        for (int id = 0; id < termCount; id++) {
+            byte[] bytes = MappedTermIndex.encode(terms.decode(id));
+            termOffsets[id + 1] = termOffsets[id] + bytes.length;
+            termHashes[id] = ((long) Arrays.hashCode(bytes) << 32) | id;
+        }
+        if ((termCount + 1L) * Long.BYTES > Integer.MAX_VALUE || (long) facts.size() * Long.BYTES > Integer.MAX_VALUE
+                || termOffsets[termCount] > Integer.MAX_VALUE) {
+            throw new IOException("A section of the materialization would exceed 2GB");
+        }
+        Arrays.sort(termHashes);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+            out.writeLong(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(termCount);
+            out.writeInt(facts.size());
+            out.writeLong(termOffsets[termCount]);
+            writeInts(out, facts.subjectOffsets());
+            writeInts(out, facts.objectOffsets());
+            writeLongs(out, facts.predicateObjects());
+            writeLongs(out, facts.predicateSubjects());
+            for (long offset : termOffsets) {
+                out.writeLong(offset);
+            }
+            for (long hash : termHashes) {
+                out.writeLong(hash);
+            }
+            for (int id = 0; id < termCount; id++) {
+                out.write(MappedTermIndex.encode(terms.decode(id)));
+            }
+        }
+    }
+
+    private static void writeInts(DataOutputStream out, IntBuffer values) throws IOException {
+        while (values.hasRemaining()) {
+            out.writeInt(values.get());
+        }
+    }
+
+    private static void writeLongs(DataOutputStream out, LongBuffer values) throws IOException {
+        while (values.hasRemaining()) {
+            out.writeLong(values.get());
+        }
+    }
+
+    private static ByteBuffer map(FileChannel channel, long[] position, long size) throws IOException {
+        ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position[0], size);
+        position[0] += size;
+        return buffer;
+    }
+
+    private File fileFor(String key) {
+        return new File(directory, key + SUFFIX);
+    }
+
+}
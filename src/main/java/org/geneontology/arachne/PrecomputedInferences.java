@@ -0,0 +1,103 @@
+package org.geneontology.arachne;
+
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLNamedIndividual;
+import org.semanticweb.owlapi.model.OWLObjectProperty;
+import org.semanticweb.owlapi.model.OWLObjectPropertyExpression;
+import org.semanticweb.owlapi.reasoner.InferenceType;
+import org.semanticweb.owlapi.reasoner.Node;
+import org.semanticweb.owlapi.reasoner.NodeSet;
+import org.semanticweb.owlapi.reasoner.impl.OWLNamedIndividualNodeSet;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-individual answers for the inference types requested through
+ * {@link ArachneProtegeReasoner#precomputeInferences(InferenceType...)}, for one snapshot. Answers are computed from
+ * a {@link Source} the first time an individual is looked up, or for every individual by {@link #fill(Iterable)},
+ * and then kept for the life of the snapshot. Publishing a snapshot therefore does not recompute the answers of
+ * individuals which are never queried, and a snapshot only counts as precomputed once it has been filled.
+ * <p>
+ * Lookups return null for inference types which were not requested, so that the caller falls back to the fact
+ * store. The returned nodes are shared between calls and must not be modified.
+ */
+final class PrecomputedInferences {
+
+    /**
+     * Computes the answers for one individual from the facts of a snapshot.
+     */
+    interface Source {
+
+        /**
+         * @return the direct and all types of the individual, in that order
+         */
+        List<NodeSet<OWLClass>> types(OWLNamedIndividual individual);
+
+        Map<OWLObjectProperty, NodeSet<OWLNamedIndividual>> objectPropertyValues(OWLNamedIndividual individual);
+
+        Node<OWLNamedIndividual> sameIndividuals(OWLNamedIndividual individual);
+
+    }
+
+    static final Set<InferenceType> SUPPORTED = Collections.unmodifiableSet(EnumSet.of(
+            InferenceType.CLASS_ASSERTIONS, InferenceType.OBJECT_PROPERTY_ASSERTIONS, InferenceType.SAME_INDIVIDUAL));
+
+    static final PrecomputedInferences NONE = new PrecomputedInferences(Collections.emptySet(), null);
+
+    private static final NodeSet<OWLNamedIndividual> NO_VALUES = new OWLNamedIndividualNodeSet();
+
+    private final Set<InferenceType> types;
+    private final Source source;
+    private final Map<OWLNamedIndividual, List<NodeSet<OWLClass>>> individualTypes = new ConcurrentHashMap<>();
+    private final Map<OWLNamedIndividual, Map<OWLObjectProperty, NodeSet<OWLNamedIndividual>>> propertyValues = new ConcurrentHashMap<>();
+    private final Map<OWLNamedIndividual, Node<OWLNamedIndividual>> sameIndividuals = new ConcurrentHashMap<>();
+    private volatile boolean filled = false;
+
+    PrecomputedInferences(Set<InferenceType> types, Source source) {
+        this.types = types.isEmpty() ? Collections.emptySet() : Collections.unmodifiableSet(EnumSet.copyOf(types));
+        this.source = source;
+    }
+
+    /**
+     * @return true if the answers of the inference type have been computed for every individual by {@link #fill(Iterable)}
+     */
+    boolean isPrecomputed(InferenceType type) {
+        return filled && types.contains(type);
+    }
+
+    Set<InferenceType> precomputedTypes() {
+        return types;
+    }
+
+    /**
+     * Computes the answers of each of the individuals which are not yet known.
+     */
+    void fill(Iterable<OWLNamedIndividual> individuals) {
+        for (OWLNamedIndividual individual : individuals) {
+            if (types.contains(InferenceType.CLASS_ASSERTIONS)) individualTypes.computeIfAbsent(individual, source::types);
+            if (types.contains(InferenceType.OBJECT_PROPERTY_ASSERTIONS)) propertyValues.computeIfAbsent(individual, source::objectPropertyValues);
+            if (types.contains(InferenceType.SAME_INDIVIDUAL)) sameIndividuals.computeIfAbsent(individual, source::sameIndividuals);
+        }
+        filled = true;
+    }
+
+    NodeSet<OWLClass> types(OWLNamedIndividual individual, boolean direct) {
+        if (!types.contains(InferenceType.CLASS_ASSERTIONS)) return null;
+        return individualTypes.computeIfAbsent(individual, source::types).get(direct ? 0 : 1);
+    }
+
+    /**
+     * @return null also for inverse properties, which are not materialized
+     */
+    NodeSet<OWLNamedIndividual> objectPropertyValues(OWLNamedIndividual individual, OWLObjectPropertyExpression property) {
+        if (!types.contains(InferenceType.OBJECT_PROPERTY_ASSERTIONS) || property.isAnonymous()) return null;
+        return propertyValues.computeIfAbsent(individual, source::objectPropertyValues).getOrDefault(property.asOWLObjectProperty(), NO_VALUES);
+    }
+
+    Node<OWLNamedIndividual> sameIndividuals(OWLNamedIndividual individual) {
+        if (!types.contains(InferenceType.SAME_INDIVIDUAL)) return null;
+        return sameIndividuals.computeIfAbsent(individual, source::sameIndividuals);
+    }
+
+}
@@ -0,0 +1,91 @@
+package org.geneontology.arachne;
+
+import org.semanticweb.owlapi.reasoner.Node;
+import org.semanticweb.owlapi.reasoner.NodeSet;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * LRU cache of query results for the current snapshot generation, bounded by the total number of
+ * nodes held in cached results. The cache empties itself when it sees a newer generation; queries
+ * answered from an older snapshot bypass it. Cached results are shared between callers and must not be modified.
+ */
+final class QueryCache {
+
+    private static final class Entry {
+
+        final Object value;
+        final int weight;
+
+        Entry(Object value, int weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+
+    }
+
+    private final long capacity;
+    private final ReasonerMetrics metrics;
+    private final LinkedHashMap<List<Object>, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long generation = -1;
+    private long weight = 0;
+
+    /**
+     * @param capacity maximum total number of nodes in cached results; 0 disables caching
+     */
+    QueryCache(long capacity, ReasonerMetrics metrics) {
+        this.capacity = capacity;
+        this.metrics = metrics;
+    }
+
+    /**
+     * @param key query method name followed by its arguments
+     */
+    @SuppressWarnings("unchecked")
+    <T> T get(long queryGeneration, Supplier<T> query, Object... key) {
+        if (capacity <= 0) return query.get();
+        List<Object> cacheKey = Arrays.asList(key);
+        synchronized (this) {
+            if (queryGeneration > generation) {
+                entries.clear();
+                weight = 0;
+                generation = queryGeneration;
+            }
+            if (queryGeneration == generation) {
+                Entry entry = entries.get(cacheKey);
+                if (entry != null) {
+                    metrics.count(ReasonerMetrics.QUERY_CACHE_HITS, 1);
+                    return (T) entry.value;
+                }
+            }
+        }
+        metrics.count(ReasonerMetrics.QUERY_CACHE_MISSES, 1);
+        T result = query.get();
+        int resultWeight = weigh(result);
+        if (resultWeight > capacity) return result;
+        synchronized (this) {
+            if (queryGeneration == generation) {
+                Entry previous = entries.put(cacheKey, new Entry(result, resultWeight));
+                if (previous != null) weight -= previous.weight;
+                weight += resultWeight;
+                Iterator<Entry> eldest = entries.values().iterator();
+                while (weight > capacity && eldest.hasNext()) {
+                    weight -= eldest.next().weight;
+                    eldest.remove();
+                }
+            }
+        }
+        return result;
+    }
+
+    private static int weigh(Object result) {
+        if (result instanceof NodeSet) return 1 + ((NodeSet<?>) result).getNodes().size();
+        else if (result instanceof Node) return 1 + ((Node<?>) result).getSize();
+        else return 1;
+    }
+
+}
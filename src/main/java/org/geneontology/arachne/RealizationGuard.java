@@ -0,0 +1,148 @@
+package org.geneontology.arachne;
+
+import org.geneontology.rules.engine.Resource;
+import org.geneontology.rules.engine.Triple;
+import org.geneontology.rules.engine.URI;
+import org.geneontology.rules.engine.WorkingMemory;
+import org.semanticweb.owlapi.reasoner.InconsistentOntologyException;
+import org.semanticweb.owlapi.reasoner.ReasonerInterruptedException;
+import org.semanticweb.owlapi.reasoner.TimeOutException;
+import org.semanticweb.owlapi.vocab.OWLRDFVocabulary;
+import scala.collection.JavaConverters;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cooperative cancellation for a single realization. The rule engine offers no hooks of its own, so
+ * the guard is checked between axiom translations, before each asserted triple is handed to the engine,
+ * by wrapping the triples in a checking {@link Iterable}, and while {@link WorkingMemories#add} runs the rules,
+ * which counts the facts it takes from the agenda.
+ * <p>
+ * A guard may be shared by working memories realized concurrently; once any of them fails, the others
+ * stop at their next check. The fact budget applies to one running total for the realization, over all
+ * working memories, see {@link #countFacts(long)}.
+ * <p>
+ * If the guard stops at the first clash, each fact {@link WorkingMemories#add} takes from the agenda is also checked
+ * for being the {@link CompiledRules#CLASH} fact or an owl:Nothing type, so realization stops before the consequences
+ * of the clash are derived. The individuals found to be instances of owl:Nothing at that point are kept in
+ * {@link #clashes()}.
+ */
+final class RealizationGuard {
+
+    private static final URI RDF_TYPE = new URI(OWLRDFVocabulary.RDF_TYPE.getIRI().toString());
+    private static final URI OWL_NOTHING = new URI(OWLRDFVocabulary.OWL_NOTHING.getIRI().toString());
+
+    private final AtomicBoolean interrupted;
+    private final long timeOut;
+    private final long deadline;
+    private final long maxFacts;
+    private final boolean stopAtClash;
+    private final AtomicLong facts = new AtomicLong();
+    private final Set<Resource> clashes = Collections.synchronizedSet(new HashSet<>());
+    private volatile boolean failed = false;
+
+    /**
+     * @param timeOut  milliseconds allowed for the realization, or {@link Long#MAX_VALUE} for no limit
+     * @param maxFacts maximum facts allowed in the realization, or {@link Long#MAX_VALUE} for no limit
+     */
+    RealizationGuard(AtomicBoolean interrupted, long timeOut, long maxFacts) {
+        this(interrupted, timeOut, maxFacts, false);
+    }
+
+    /**
+     * @param stopAtClash whether to fail with an {@link InconsistentOntologyException} as soon as an individual
+     *                    is found to be an instance of owl:Nothing
+     */
+    RealizationGuard(AtomicBoolean interrupted, long timeOut, long maxFacts, boolean stopAtClash) {
+        this.interrupted = interrupted;
+        this.timeOut = timeOut;
+        this.deadline = timeOut == Long.MAX_VALUE ? Long.MAX_VALUE : System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeOut);
+        this.maxFacts = maxFacts;
+        this.stopAtClash = stopAtClash;
+    }
+
+    void check() {
+        if (failed) {
+            throw new ReasonerInterruptedException("Realization was abandoned");
+        }
+        if (interrupted.get() || Thread.currentThread().isInterrupted()) {
+            throw fail(new ReasonerInterruptedException("Realization was interrupted"));
+        }
+        if (deadline != Long.MAX_VALUE && System.nanoTime() - deadline > 0) {
+            throw fail(new TimeOutException("Realization did not complete within " + timeOut + " ms"));
+        }
+    }
+
+    /**
+     * Adds to the running total of facts, and fails if the total exceeds the budget.
+     *
+     * @param added facts added to any working memory, or kept from an earlier realization, since the last call
+     */
+    void countFacts(long added) {
+        if (facts.addAndGet(added) > maxFacts) {
+            throw fail(new ReasonerInterruptedException("Realization exceeded the maximum of " + maxFacts + " facts"));
+        }
+    }
+
+    /**
+     * @return the individuals found to be instances of owl:Nothing when realization was stopped at a clash,
+     * or an empty set if it was not
+     */
+    Set<Resource> clashes() {
+        return clashes;
+    }
+
+    /**
+     * Fails if the guard stops at the first clash and the fact, just taken from the agenda of the memory, is one.
+     */
+    void checkClash(Triple fact, WorkingMemory memory) {
+        if (!stopAtClash) return;
+        if (fact.equals(CompiledRules.CLASH) || isNothingType(fact)) {
+            for (Triple other : JavaConverters.setAsJavaSet(memory.facts())) {
+                if (isNothingType(other)) clashes.add(other.s());
+            }
+            throw fail(new InconsistentOntologyException());
+        }
+    }
+
+    private static boolean isNothingType(Triple triple) {
+        return triple.p().equals(RDF_TYPE) && triple.o().equals(OWL_NOTHING);
+    }
+
+    private RuntimeException fail(RuntimeException e) {
+        failed = true;
+        return e;
+    }
+
+    /**
+     * @return a view of the items which checks the guard before each item and advances the progress after it
+     */
+    <T> Iterable<T> watch(Iterable<T> items, TaskProgress progress) {
+        return () -> {
+            Iterator<T> iterator = items.iterator();
+            return new Iterator<T>() {
+
+                @Override
+                public boolean hasNext() {
+                    return iterator.hasNext();
+                }
+
+                @Override
+                public T next() {
+                    check();
+                    T item = iterator.next();
+                    progress.advance();
+                    return item;
+                }
+
+            };
+        };
+    }
+
+}
@@ -0,0 +1,40 @@
+package org.geneontology.arachne;
+
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLNamedIndividual;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * An immutable, completed realization of the Abox. Queries read from the current snapshot while
+ * a new one may be under construction; the reasoner swaps snapshots atomically.
+ */
+final class RealizationSnapshot {
+
+    static final RealizationSnapshot EMPTY = new RealizationSnapshot(0, FactStore.EMPTY, HierarchyIndex.View.empty(), PrecomputedInferences.NONE, Collections.emptySet());
+
+    final long generation;
+    final FactStore facts;
+
+    /**
+     * Told class hierarchy the facts were realized with, from which their direct types are computed.
+     */
+    final HierarchyIndex.View<OWLClass> classes;
+
+    final PrecomputedInferences precomputed;
+
+    /**
+     * Named individuals realized as instances of owl:Nothing; the Abox is consistent if there are none.
+     */
+    final Set<OWLNamedIndividual> inconsistentIndividuals;
+
+    RealizationSnapshot(long generation, FactStore facts, HierarchyIndex.View<OWLClass> classes, PrecomputedInferences precomputed, Set<OWLNamedIndividual> inconsistentIndividuals) {
+        this.generation = generation;
+        this.facts = facts;
+        this.classes = classes;
+        this.precomputed = precomputed;
+        this.inconsistentIndividuals = inconsistentIndividuals;
+    }
+
+}
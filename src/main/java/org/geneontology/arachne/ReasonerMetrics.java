@@ -0,0 +1,159 @@
+package org.geneontology.arachne;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * Timings of flush phases, latency histograms of reasoner queries and running totals of work done.
+ * One instance may be shared by several reasoners, in which case it reports their aggregate.
+ */
+public class ReasonerMetrics implements ReasonerMetricsMXBean {
+
+    public static final String OBJECT_NAME = "org.geneontology.arachne:type=ReasonerMetrics";
+
+    static final String STRUCTURAL_FLUSH = "structuralFlush";
+    static final String HIERARCHY_UPDATE = "hierarchyUpdate";
+    static final String RULE_TRANSLATION = "ruleTranslation";
+    static final String ENGINE_CONSTRUCTION = "engineConstruction";
+    static final String TRIPLE_CONVERSION = "tripleConversion";
+    static final String PROCESS_TRIPLES = "processTriples";
+    static final String SNAPSHOT_BUILD = "snapshotBuild";
+    static final String PRECOMPUTATION = "precomputation";
+    static final String MATERIALIZATION_STORE = "materializationStore";
+
+    static final String AXIOMS_TRANSLATED = "axiomsTranslated";
+    static final String RULES_COMPILED = "rulesCompiled";
+    static final String TRIPLES_CONVERTED = "triplesConverted";
+    static final String FACTS_PUBLISHED = "factsPublished";
+    static final String QUERY_CACHE_HITS = "queryCacheHits";
+    static final String QUERY_CACHE_MISSES = "queryCacheMisses";
+    static final String MATERIALIZATIONS_REUSED = "materializationsReused";
+    static final String RULE_CHANGES_DEFERRED = "ruleChangesDeferred";
+    static final String RULES_PRUNED = "rulesPruned";
+
+    private static final Logger logger = LoggerFactory.getLogger(ReasonerMetrics.class);
+
+    private final ConcurrentMap<String, LatencyHistogram> phases = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LatencyHistogram> queries = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, AtomicLong> counters = new ConcurrentHashMap<>();
+
+    /**
+     * Registers the metrics with the platform MBean server, unless something is already registered under
+     * {@link #OBJECT_NAME}.
+     */
+    void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (InstanceAlreadyExistsException e) {
+            // Registered by another factory instance
+        } catch (JMException | SecurityException e) {
+            logger.warn("Unable to register reasoner metrics with JMX", e);
+        }
+    }
+
+    /**
+     * @param start value of {@link System#nanoTime()} when the phase started
+     */
+    void phase(String name, long start) {
+        phases.computeIfAbsent(name, k -> new LatencyHistogram()).record(System.nanoTime() - start);
+    }
+
+    /**
+     * @param start value of {@link System#nanoTime()} when the query started
+     */
+    void query(String name, long start) {
+        queries.computeIfAbsent(name, k -> new LatencyHistogram()).record(System.nanoTime() - start);
+    }
+
+    void count(String name, long amount) {
+        counters.computeIfAbsent(name, k -> new AtomicLong()).addAndGet(amount);
+    }
+
+    @Override
+    public Map<String, Long> getPhaseCounts() {
+        return longs(phases, LatencyHistogram::count);
+    }
+
+    @Override
+    public Map<String, Double> getPhaseTotalMillis() {
+        return doubles(phases, h -> h.totalNanos() / 1e6);
+    }
+
+    @Override
+    public Map<String, Double> getPhaseMaxMillis() {
+        return doubles(phases, h -> h.maxNanos() / 1e6);
+    }
+
+    @Override
+    public Map<String, Long> getQueryCounts() {
+        return longs(queries, LatencyHistogram::count);
+    }
+
+    @Override
+    public Map<String, Double> getQueryMeanMicros() {
+        return doubles(queries, h -> h.meanNanos() / 1e3);
+    }
+
+    @Override
+    public Map<String, Double> getQueryMedianMicros() {
+        return doubles(queries, h -> h.percentileNanos(0.5) / 1e3);
+    }
+
+    @Override
+    public Map<String, Double> getQuery99thPercentileMicros() {
+        return doubles(queries, h -> h.percentileNanos(0.99) / 1e3);
+    }
+
+    @Override
+    public Map<String, Double> getQueryMaxMicros() {
+        return doubles(queries, h -> h.maxNanos() / 1e3);
+    }
+
+    @Override
+    public Map<String, Long> getCounters() {
+        Map<String, Long> values = new TreeMap<>();
+        counters.forEach((name, value) -> values.put(name, value.get()));
+        return values;
+    }
+
+    @Override
+    public double getQueryCacheHitRate() {
+        AtomicLong hits = counters.get(QUERY_CACHE_HITS);
+        AtomicLong misses = counters.get(QUERY_CACHE_MISSES);
+        long h = hits != null ? hits.get() : 0;
+        long m = misses != null ? misses.get() : 0;
+        return h + m == 0 ? 0 : (double) h / (h + m);
+    }
+
+    @Override
+    public void reset() {
+        phases.clear();
+        queries.clear();
+        counters.clear();
+    }
+
+    private static Map<String, Long> longs(Map<String, LatencyHistogram> histograms, ToLongFunction<LatencyHistogram> value) {
+        Map<String, Long> values = new TreeMap<>();
+        histograms.forEach((name, histogram) -> values.put(name, value.applyAsLong(histogram)));
+        return values;
+    }
+
+    private static Map<String, Double> doubles(Map<String, LatencyHistogram> histograms, ToDoubleFunction<LatencyHistogram> value) {
+        Map<String, Double> values = new TreeMap<>();
+        histograms.forEach((name, histogram) -> values.put(name, value.applyAsDouble(histogram)));
+        return values;
+    }
+
+}
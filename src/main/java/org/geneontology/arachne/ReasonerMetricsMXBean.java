@@ -0,0 +1,39 @@
+package org.geneontology.arachne;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link ReasonerMetrics}, registered by {@link ArachneProtegeReasonerFactory} as
+ * {@value ReasonerMetrics#OBJECT_NAME}. Phase and query maps are keyed by phase or method name.
+ */
+public interface ReasonerMetricsMXBean {
+
+    Map<String, Long> getPhaseCounts();
+
+    Map<String, Double> getPhaseTotalMillis();
+
+    Map<String, Double> getPhaseMaxMillis();
+
+    Map<String, Long> getQueryCounts();
+
+    Map<String, Double> getQueryMeanMicros();
+
+    Map<String, Double> getQueryMedianMicros();
+
+    Map<String, Double> getQuery99thPercentileMicros();
+
+    Map<String, Double> getQueryMaxMicros();
+
+    /**
+     * Running totals of work done, such as axioms translated and triples processed.
+     */
+    Map<String, Long> getCounters();
+
+    /**
+     * Fraction of cacheable queries answered from the query result cache.
+     */
+    double getQueryCacheHitRate();
+
+    void reset();
+
+}
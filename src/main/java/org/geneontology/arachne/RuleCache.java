@@ -0,0 +1,118 @@
+package org.geneontology.arachne;
+
+import org.geneontology.rules.engine.Rule;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Local disk cache of per-axiom rule translations, keyed by a fingerprint of the Tbox and Rbox axioms
+ * in an ontology's imports closure. Translations are stored with Java serialization; any unreadable
+ * entry is treated as a cache miss and deleted. A reasoner stores its translations when they are first made and
+ * when it is disposed, replacing the entry it stored or loaded before, so edits do not leave an entry each.
+ * <p>
+ * Only the rules are cached. The Rete network built by {@link org.geneontology.rules.engine.RuleEngine}
+ * is not serializable and is still constructed on each load.
+ */
+final class RuleCache {
+
+    /**
+     * Bump when the translation settings or the serialized form change, so stale entries are ignored.
+     */
+    private static final String FORMAT_VERSION = "3";
+
+    private static final Logger logger = LoggerFactory.getLogger(RuleCache.class);
+
+    private final File directory;
+
+    RuleCache(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Content hash of the logical Tbox and Rbox axioms of the imports closure, as given by
+     * {@link RuleTranslator#ruleAxioms(OWLOntology)}. Axiom annotations are ignored since they do not affect translation.
+     */
+    static String fingerprint(Set<OWLAxiom> ruleAxioms, boolean indirectRules) {
+        List<String> axioms = new ArrayList<>();
+        for (OWLAxiom axiom : ruleAxioms) {
+            axioms.add(axiom.toString());
+        }
+        axioms.sort(null);
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update((FORMAT_VERSION + "|" + indirectRules + "\n").getBytes(StandardCharsets.UTF_8));
+            for (String axiom : axioms) {
+                digest.update(axiom.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) '\n');
+            }
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required by the Java platform", e);
+        }
+    }
+
+    /**
+     * @return the cached translations keyed by axiom string, or null if there is no usable entry for the fingerprint
+     */
+    @SuppressWarnings("unchecked")
+    Map<String, List<Rule>> load(String fingerprint) {
+        File file = fileFor(fingerprint);
+        if (!file.isFile()) return null;
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            return (Map<String, List<Rule>>) in.readObject();
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            logger.warn("Deleting unreadable rule cache entry " + file, e);
+            file.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Writes the translations under the fingerprint.
+     *
+     * @param superseded fingerprint of the entry replaced by this one, which is deleted, or null
+     */
+    void store(String fingerprint, Map<String, List<Rule>> translations, String superseded) {
+        if (superseded != null && !superseded.equals(fingerprint)) {
+            File old = fileFor(superseded);
+            if (old.exists() && !old.delete()) logger.warn("Unable to delete rule cache entry " + old);
+        }
+        File file = fileFor(fingerprint);
+        File temp = null;
+        try {
+            Files.createDirectories(directory.toPath());
+            temp = File.createTempFile(fingerprint, ".tmp", directory);
+            try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                out.writeObject(new HashMap<>(translations));
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("Unable to write rule cache entry " + file, e);
+        } finally {
+            if (temp != null && temp.exists()) temp.delete();
+        }
+    }
+
+    private File fileFor(String fingerprint) {
+        return new File(directory, fingerprint + ".rules");
+    }
+
+}
@@ -0,0 +1,142 @@
+package org.geneontology.arachne;
+
+import org.geneontology.rules.engine.Node;
+import org.geneontology.rules.engine.Rule;
+import org.geneontology.rules.engine.TriplePattern;
+import org.geneontology.rules.engine.URI;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLEntity;
+import org.semanticweb.owlapi.vocab.OWLRDFVocabulary;
+import scala.collection.JavaConverters;
+
+import java.util.*;
+
+/**
+ * Signature index over a rule set, for deciding whether a Tbox or Rbox edit can change the realized Abox.
+ * <p>
+ * A class or property is reachable if the Abox uses it, or if it appears in the head of a rule whose body
+ * predicates and rdf:type classes are all reachable. An axiom none of whose classes and properties are reachable
+ * can only produce rules that never fire, so rule regeneration may be deferred until one of them becomes reachable.
+ * This over-approximates which rules can fire, so relevance is conservative, and rules outside the reachable set
+ * may be left out of the rule engine without changing the realization.
+ */
+final class RuleReachability {
+
+    private static final URI RDF_TYPE = new URI(OWLRDFVocabulary.RDF_TYPE.getIRI().toString());
+    private static final URI OWL_THING = new URI(OWLRDFVocabulary.OWL_THING.getIRI().toString());
+
+    private final List<Rule> rules = new ArrayList<>();
+    private final List<Set<URI>> bodies = new ArrayList<>();
+    private final List<Set<URI>> heads = new ArrayList<>();
+    private final Map<URI, List<Integer>> rulesByBodyTerm = new HashMap<>();
+    private Set<URI> reachable = null;
+    private Set<URI> vocabulary = null;
+    private int vocabularySize = -1;
+
+    RuleReachability(Collection<Rule> rules) {
+        for (Rule rule : rules) {
+            int index = bodies.size();
+            this.rules.add(rule);
+            Set<URI> body = terms(rule.body());
+            bodies.add(body);
+            heads.add(terms(rule.head()));
+            for (URI term : body) {
+                rulesByBodyTerm.computeIfAbsent(term, k -> new ArrayList<>()).add(index);
+            }
+        }
+    }
+
+    /**
+     * The result for the last vocabulary is kept, since the rules may be shared by reasoners over different Aboxes.
+     *
+     * @param vocabulary classes and properties used by the Abox; the set may only grow between calls
+     */
+    synchronized Set<URI> reachable(Set<URI> vocabulary) {
+        if (reachable != null && this.vocabulary == vocabulary && vocabularySize == vocabulary.size()) return reachable;
+        Set<URI> reached = closure(vocabulary);
+        reachable = reached;
+        this.vocabulary = vocabulary;
+        vocabularySize = vocabulary.size();
+        return reached;
+    }
+
+    /**
+     * @return the rules whose body predicates and rdf:type classes are all reachable; the others can never fire
+     */
+    List<Rule> firable(Set<URI> reachable) {
+        List<Rule> firable = new ArrayList<>();
+        for (int rule = 0; rule < rules.size(); rule++) {
+            if (reachable.containsAll(bodies.get(rule))) firable.add(rules.get(rule));
+        }
+        return firable;
+    }
+
+    /**
+     * @return the classes and properties reachable from the vocabulary, computed afresh
+     */
+    Set<URI> closure(Set<URI> vocabulary) {
+        Set<URI> reached = new HashSet<>();
+        int[] unsatisfied = new int[bodies.size()];
+        Deque<URI> queue = new ArrayDeque<>(vocabulary);
+        queue.add(RDF_TYPE);
+        queue.add(OWL_THING);
+        for (int rule = 0; rule < bodies.size(); rule++) {
+            unsatisfied[rule] = bodies.get(rule).size();
+            if (unsatisfied[rule] == 0) queue.addAll(heads.get(rule));
+        }
+        while (!queue.isEmpty()) {
+            URI term = queue.pop();
+            if (!reached.add(term)) continue;
+            for (int rule : rulesByBodyTerm.getOrDefault(term, Collections.emptyList())) {
+                if (--unsatisfied[rule] == 0) queue.addAll(heads.get(rule));
+            }
+        }
+        return reached;
+    }
+
+    /**
+     * @return the constant predicates and rdf:type classes the rule bodies match facts against
+     */
+    Set<URI> bodyTerms() {
+        return Collections.unmodifiableSet(rulesByBodyTerm.keySet());
+    }
+
+    /**
+     * @return true if the axiom mentions a reachable class or property, or an individual
+     */
+    static boolean isRelevant(OWLAxiom axiom, Set<URI> reachable) {
+        if (!axiom.getIndividualsInSignature().isEmpty()) return true;
+        for (OWLEntity entity : axiom.getSignature()) {
+            if (entity.isOWLDatatype()) continue;
+            if (reachable.contains(new URI(entity.getIRI().toString()))) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Adds the classes and properties of an Abox axiom to the vocabulary.
+     */
+    static void addVocabulary(OWLAxiom axiom, Set<URI> vocabulary) {
+        for (OWLEntity entity : axiom.getSignature()) {
+            if (entity.isOWLClass() || entity.isOWLObjectProperty() || entity.isOWLDataProperty()) {
+                vocabulary.add(new URI(entity.getIRI().toString()));
+            }
+        }
+    }
+
+    /**
+     * @return constant predicates, and constant classes of rdf:type patterns
+     */
+    private static Set<URI> terms(scala.collection.immutable.List<TriplePattern> patterns) {
+        Set<URI> terms = new HashSet<>();
+        for (TriplePattern pattern : JavaConverters.seqAsJavaList(patterns)) {
+            Node predicate = pattern.p();
+            if (predicate instanceof URI) {
+                terms.add((URI) predicate);
+                if (predicate.equals(RDF_TYPE) && pattern.o() instanceof URI) terms.add((URI) pattern.o());
+            }
+        }
+        return terms;
+    }
+
+}
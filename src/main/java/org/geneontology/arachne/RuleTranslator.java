@@ -0,0 +1,175 @@
+package org.geneontology.arachne;
+
+import org.geneontology.jena.OWLtoRules;
+import org.geneontology.rules.engine.Rule;
+import org.geneontology.rules.util.Bridge;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.semanticweb.owlapi.model.parameters.Imports;
+import scala.collection.JavaConverters;
+
+import java.util.*;
+
+/**
+ * Translates Tbox and Rbox axioms to rules one axiom at a time, keeping track of which axioms produced
+ * which rules. After an edit only the added axioms are translated, and the resulting rule set can
+ * be compared with the previous one to decide whether the rule engine must be rebuilt.
+ * <p>
+ * Each axiom is translated by {@link OWLtoRules} on its own in a scratch ontology. The indirect type
+ * rules depend on the class hierarchy as a whole and are regenerated from the full ontology.
+ * <p>
+ * The owl:sameAs replacement rules, which copy every fact onto each member of an equivalence class, are optional.
+ * {@link AboxRealizer} does without them by realizing over one representative per class.
+ */
+final class RuleTranslator {
+
+    private final OWLOntologyManager scratchManager = OWLManager.createOWLOntologyManager();
+    private final OWLOntology scratch;
+    private final Map<OWLAxiom, List<Rule>> rulesByAxiom = new HashMap<>();
+    private final Map<Rule, Integer> ruleCounts = new HashMap<>();
+    private Set<Rule> indirectRules = Collections.emptySet();
+    private Map<String, List<Rule>> restored = Collections.emptyMap();
+    private int translatedCount = 0;
+    private final boolean equalityRules;
+
+    /**
+     * @param equalityRules whether to generate the owl:sameAs replacement rules
+     */
+    RuleTranslator(boolean equalityRules) {
+        this.equalityRules = equalityRules;
+        try {
+            this.scratch = scratchManager.createOntology();
+        } catch (OWLOntologyCreationException e) {
+            throw new IllegalStateException("Unable to create scratch ontology for rule translation", e);
+        }
+    }
+
+    /**
+     * Logical Tbox and Rbox axioms of the imports closure, without annotations.
+     */
+    static Set<OWLAxiom> ruleAxioms(OWLOntology ontology) {
+        Set<OWLAxiom> axioms = new HashSet<>();
+        for (OWLAxiom axiom : ontology.getTBoxAxioms(Imports.INCLUDED)) {
+            axioms.add(axiom.getAxiomWithoutAnnotations());
+        }
+        for (OWLAxiom axiom : ontology.getRBoxAxioms(Imports.INCLUDED)) {
+            axioms.add(axiom.getAxiomWithoutAnnotations());
+        }
+        return axioms;
+    }
+
+    static Set<Rule> indirectRules(OWLOntology ontology) {
+        return new HashSet<>(JavaConverters.asJavaCollection(Bridge.rulesFromJena(OWLtoRules.indirectRules(ontology))));
+    }
+
+    /**
+     * Seed translations from a previously saved mapping, keyed by axiom string.
+     */
+    void restore(Map<String, List<Rule>> translations) {
+        this.restored = translations;
+    }
+
+    /**
+     * @return a serializable copy of the axiom to rules mapping, keyed by axiom string
+     */
+    Map<String, List<Rule>> translations() {
+        Map<String, List<Rule>> translations = new HashMap<>();
+        for (Map.Entry<OWLAxiom, List<Rule>> entry : rulesByAxiom.entrySet()) {
+            translations.put(entry.getKey().toString(), new ArrayList<>(entry.getValue()));
+        }
+        return translations;
+    }
+
+    boolean isEmpty() {
+        return rulesByAxiom.isEmpty();
+    }
+
+    /**
+     * Brings the mapping in line with the current Tbox and Rbox axioms, as given by {@link #ruleAxioms(OWLOntology)},
+     * translating only axioms not seen before and dropping rules of axioms no longer present.
+     *
+     * @return true if the rule set changed
+     */
+    boolean synchronize(Set<OWLAxiom> current, Set<Rule> newIndirectRules, RealizationGuard guard, TaskProgress progress) {
+        translatedCount = 0;
+        boolean changed = false;
+        Iterator<Map.Entry<OWLAxiom, List<Rule>>> entries = rulesByAxiom.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<OWLAxiom, List<Rule>> entry = entries.next();
+            if (!current.contains(entry.getKey())) {
+                for (Rule rule : entry.getValue()) {
+                    changed |= decrement(rule);
+                }
+                entries.remove();
+            }
+        }
+        progress.begin(current.size());
+        for (OWLAxiom axiom : current) {
+            progress.advance();
+            if (!rulesByAxiom.containsKey(axiom)) {
+                List<Rule> rules = restored.get(axiom.toString());
+                if (rules == null) {
+                    guard.check();
+                    rules = translate(axiom);
+                    translatedCount++;
+                }
+                rulesByAxiom.put(axiom, rules);
+                for (Rule rule : rules) {
+                    changed |= increment(rule);
+                }
+            }
+        }
+        restored = Collections.emptyMap();
+        if (!newIndirectRules.equals(indirectRules)) {
+            indirectRules = newIndirectRules;
+            changed = true;
+        }
+        return changed;
+    }
+
+    /**
+     * @return the number of axioms which had to be translated by the last {@link #synchronize(Set, Set, RealizationGuard, TaskProgress)}
+     */
+    int translatedCount() {
+        return translatedCount;
+    }
+
+    List<Rule> rules() {
+        List<Rule> rules = new ArrayList<>(ruleCounts.size() + indirectRules.size());
+        rules.addAll(ruleCounts.keySet());
+        for (Rule rule : indirectRules) {
+            if (!ruleCounts.containsKey(rule)) rules.add(rule);
+        }
+        return rules;
+    }
+
+    private List<Rule> translate(OWLAxiom axiom) {
+        scratchManager.addAxiom(scratch, axiom);
+        try {
+            return new ArrayList<>(JavaConverters.asJavaCollection(
+                    Bridge.rulesFromJena(OWLtoRules.translate(scratch, Imports.EXCLUDED, true, true, false, equalityRules))));
+        } finally {
+            scratchManager.removeAxiom(scratch, axiom);
+        }
+    }
+
+    private boolean increment(Rule rule) {
+        return ruleCounts.merge(rule, 1, Integer::sum) == 1;
+    }
+
+    private boolean decrement(Rule rule) {
+        Integer count = ruleCounts.get(rule);
+        if (count == null) return false;
+        if (count == 1) {
+            ruleCounts.remove(rule);
+            return true;
+        } else {
+            ruleCounts.put(rule, count - 1);
+            return false;
+        }
+    }
+
+}
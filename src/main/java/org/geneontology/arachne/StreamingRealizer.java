@@ -0,0 +1,200 @@
+package org.geneontology.arachne;
+
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RDFLanguages;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFBase;
+import org.apache.jena.riot.system.StreamRDFWriter;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.system.JenaSystem;
+import org.geneontology.rules.engine.RuleEngine;
+import org.geneontology.rules.engine.Triple;
+import org.geneontology.rules.engine.WorkingMemory;
+import org.geneontology.rules.util.Bridge;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.reasoner.NullReasonerProgressMonitor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import scala.collection.JavaConverters;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.StreamSupport;
+
+/**
+ * Command line realizer for Aboxes too large to load as an OWL ontology. The Tbox is translated to rules
+ * as in {@link ArachneProtegeReasoner#flush()}; Abox triples are then streamed from an RDF file, without an OWL
+ * ontology or Jena model for the data, and realized in batches as they are read, all in a single working memory.
+ * The Abox is held only as the facts of the memory, unless the asserted triples are kept to leave them out of the
+ * output. The realized triples are written as N-Triples.
+ * <p>
+ * Usage: {@code StreamingRealizer <tbox> <abox> [--output file] [--inferred-only]}
+ */
+public class StreamingRealizer {
+
+    private static final Logger logger = LoggerFactory.getLogger(StreamingRealizer.class);
+
+    private static final int LOG_INTERVAL = 1_000_000;
+
+    /**
+     * Triples parsed before they are handed to the rule engine
+     */
+    private static final int BATCH_SIZE = 10_000;
+
+    /**
+     * A realized Abox. The asserted triples of its working memory are left empty, as the Abox is added to the
+     * memory in batches; they are kept apart if requested.
+     */
+    public static final class Realization {
+
+        public final WorkingMemory memory;
+
+        /**
+         * Number of triples read from the Abox, including any repeated
+         */
+        public final long triples;
+
+        /**
+         * Asserted triples, or null if they were not kept
+         */
+        private final Set<Triple> asserted;
+
+        Realization(WorkingMemory memory, long triples, Set<Triple> asserted) {
+            this.memory = memory;
+            this.triples = triples;
+            this.asserted = asserted;
+        }
+
+        /**
+         * @return true if the fact was asserted rather than inferred
+         * @throws IllegalStateException if the asserted triples were not kept
+         */
+        public boolean isAsserted(Triple fact) {
+            if (asserted == null) throw new IllegalStateException("Asserted triples were not kept");
+            return asserted.contains(fact);
+        }
+
+    }
+
+    private final RuleEngine engine;
+
+    public StreamingRealizer(OWLOntology tbox) {
+        // The single working memory has no representatives, so equality is materialized by rules
+        RuleTranslator translator = new RuleTranslator(true);
+        RealizationGuard guard = new RealizationGuard(new AtomicBoolean(false), Long.MAX_VALUE, Long.MAX_VALUE);
+        // Indirect type rules only mark facts for direct type queries, which don't apply to an exported Abox
+        translator.synchronize(RuleTranslator.ruleAxioms(tbox), Collections.emptySet(), guard, new TaskProgress(new NullReasonerProgressMonitor()));
+        this.engine = new RuleEngine(JavaConverters.asScalaBuffer(translator.rules()), false);
+    }
+
+    /**
+     * Parses the Abox file, in any syntax Jena recognizes from its name, and realizes it in batches of
+     * {@value #BATCH_SIZE} triples as they are read.
+     *
+     * @param keepAsserted if true, the asserted triples are kept, so that inferred facts can be told apart
+     */
+    public Realization realize(String aboxLocation, boolean keepAsserted) {
+        WorkingMemory memory = WorkingMemories.empty(engine);
+        Set<Triple> asserted = keepAsserted ? new HashSet<>() : null;
+        List<Triple> batch = new ArrayList<>(BATCH_SIZE);
+        long[] read = {0};
+        StreamRDF sink = new StreamRDFBase() {
+
+            @Override
+            public void triple(org.apache.jena.graph.Triple triple) {
+                batch.add(Bridge.tripleFromJena(triple));
+                if (batch.size() == BATCH_SIZE) flush();
+                if (++read[0] % LOG_INTERVAL == 0) logger.info("Read " + read[0] + " triples");
+            }
+
+            @Override
+            public void quad(Quad quad) {
+                triple(quad.asTriple());
+            }
+
+            @Override
+            public void finish() {
+                flush();
+            }
+
+            private void flush() {
+                if (asserted != null) asserted.addAll(batch);
+                WorkingMemories.add(engine, batch, memory);
+                batch.clear();
+            }
+
+        };
+        RDFDataMgr.parse(sink, aboxLocation);
+        logger.info("Realized " + read[0] + " triples; " + memory.facts().size() + " facts");
+        return new Realization(memory, read[0], asserted);
+    }
+
+    /**
+     * Realizes the triples in a new working memory, consuming them one at a time.
+     *
+     * @param keepAsserted if true, the asserted triples are kept, so that inferred facts can be told apart
+     */
+    Realization realize(Iterable<Triple> triples, boolean keepAsserted) {
+        WorkingMemory memory = WorkingMemories.empty(engine);
+        Set<Triple> asserted = keepAsserted ? new HashSet<>() : null;
+        long[] read = {0};
+        WorkingMemories.add(engine, () -> StreamSupport.stream(triples.spliterator(), false).peek(triple -> {
+            read[0]++;
+            if (asserted != null) asserted.add(triple);
+        }).iterator(), memory);
+        return new Realization(memory, read[0], asserted);
+    }
+
+    /**
+     * Writes the facts of the realization as N-Triples.
+     *
+     * @param inferredOnly if true, asserted triples are left out; they must have been kept
+     */
+    public static void write(Realization realization, OutputStream out, boolean inferredOnly) {
+        StreamRDF writer = StreamRDFWriter.getWriterStream(out, Lang.NTRIPLES);
+        writer.start();
+        for (Triple triple : JavaConverters.setAsJavaSet(realization.memory.facts())) {
+            if (inferredOnly && realization.isAsserted(triple)) continue;
+            writer.triple(Bridge.jenaFromTriple(triple));
+        }
+        writer.finish();
+    }
+
+    public static void main(String[] args) throws OWLOntologyCreationException, IOException {
+        List<String> files = new ArrayList<>();
+        File output = null;
+        boolean inferredOnly = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--output":
+                    output = new File(args[++i]);
+                    break;
+                case "--inferred-only":
+                    inferredOnly = true;
+                    break;
+                default:
+                    files.add(args[i]);
+            }
+        }
+        if (files.size() != 2) {
+            System.err.println("Usage: StreamingRealizer <tbox> <abox> [--output file] [--inferred-only]");
+            System.exit(1);
+        }
+        if (RDFLanguages.filenameToLang(files.get(1)) == null) {
+            System.err.println("Unrecognized RDF syntax for " + files.get(1));
+            System.exit(1);
+        }
+        JenaSystem.init();
+        OWLOntology tbox = OWLManager.createOWLOntologyManager().loadOntologyFromOntologyDocument(new File(files.get(0)));
+        StreamingRealizer realizer = new StreamingRealizer(tbox);
+        Realization realization = realizer.realize(files.get(1), inferredOnly);
+        try (OutputStream out = new BufferedOutputStream(output != null ? new FileOutputStream(output) : System.out)) {
+            write(realization, out, inferredOnly);
+        }
+    }
+
+}
@@ -0,0 +1,45 @@
+package org.geneontology.arachne;
+
+import org.semanticweb.owlapi.reasoner.ReasonerProgressMonitor;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reports progress of a reasoner task with a known amount of work to a {@link ReasonerProgressMonitor},
+ * at most about a hundred times per task. May be advanced from several threads.
+ */
+final class TaskProgress {
+
+    private final ReasonerProgressMonitor monitor;
+    private final AtomicLong done = new AtomicLong();
+    private volatile long total = 0;
+    private volatile long step = 1;
+
+    TaskProgress(ReasonerProgressMonitor monitor) {
+        this.monitor = monitor;
+    }
+
+    /**
+     * Starts counting towards a new total.
+     */
+    void begin(long total) {
+        this.total = total;
+        this.step = Math.max(1, total / 100);
+        done.set(0);
+        report(0);
+    }
+
+    void advance() {
+        long value = done.incrementAndGet();
+        if (value % step == 0 || value == total) report(value);
+    }
+
+    private void report(long value) {
+        long max = total;
+        if (max <= 0) return;
+        // The monitor takes ints; scale down if needed
+        long scale = max / Integer.MAX_VALUE + 1;
+        monitor.reasonerTaskProgressChanged((int) (Math.min(value, max) / scale), (int) (max / scale));
+    }
+
+}
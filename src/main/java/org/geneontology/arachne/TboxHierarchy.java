@@ -0,0 +1,121 @@
+package org.geneontology.arachne;
+
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.*;
+import org.semanticweb.owlapi.model.parameters.Imports;
+import org.semanticweb.owlapi.reasoner.impl.NodeFactory;
+import org.semanticweb.owlapi.reasoner.impl.OWLClassNodeSet;
+import org.semanticweb.owlapi.reasoner.impl.OWLDataPropertyNodeSet;
+import org.semanticweb.owlapi.reasoner.impl.OWLObjectPropertyNodeSet;
+
+import java.util.*;
+
+/**
+ * Told class, object property and data property hierarchies of an ontology's imports closure, answering the
+ * Tbox hierarchy queries without a structural reasoner. Changed axioms are applied one at a time, so an
+ * edit to the Abox costs at most a few signature lookups.
+ */
+final class TboxHierarchy {
+
+    final HierarchyIndex<OWLClass> classes;
+    final HierarchyIndex<OWLObjectPropertyExpression> objectProperties;
+    final HierarchyIndex<OWLDataProperty> dataProperties;
+
+    private final OWLOntology ontology;
+
+    TboxHierarchy(OWLOntology ontology) {
+        this.ontology = ontology;
+        OWLDataFactory factory = OWLManager.getOWLDataFactory();
+        this.classes = new HierarchyIndex<>(factory.getOWLThing(), factory.getOWLNothing(),
+                () -> ontology.getClassesInSignature(Imports.INCLUDED), NodeFactory::getOWLClassNode, OWLClassNodeSet::new);
+        this.objectProperties = new HierarchyIndex<>(factory.getOWLTopObjectProperty(), factory.getOWLBottomObjectProperty(),
+                () -> ontology.getObjectPropertiesInSignature(Imports.INCLUDED), NodeFactory::getOWLObjectPropertyNode, OWLObjectPropertyNodeSet::new);
+        this.dataProperties = new HierarchyIndex<>(factory.getOWLTopDataProperty(), factory.getOWLBottomDataProperty(),
+                () -> ontology.getDataPropertiesInSignature(Imports.INCLUDED), NodeFactory::getOWLDataPropertyNode, OWLDataPropertyNodeSet::new);
+        reload();
+    }
+
+    /**
+     * Reads the told hierarchies from the ontology again, e.g. after an import change.
+     */
+    void reload() {
+        classes.clear();
+        objectProperties.clear();
+        dataProperties.clear();
+        List<AxiomType<?>> types = Arrays.asList(AxiomType.SUBCLASS_OF, AxiomType.EQUIVALENT_CLASSES,
+                AxiomType.SUB_OBJECT_PROPERTY, AxiomType.EQUIVALENT_OBJECT_PROPERTIES,
+                AxiomType.SUB_DATA_PROPERTY, AxiomType.EQUIVALENT_DATA_PROPERTIES);
+        for (AxiomType<?> type : types) {
+            for (OWLAxiom axiom : ontology.getAxioms(type, Imports.INCLUDED)) {
+                applyEdges(axiom, true);
+            }
+        }
+    }
+
+    /**
+     * Applies an axiom added to or removed from the ontology.
+     */
+    void apply(OWLAxiom axiom, boolean added) {
+        applyEdges(axiom, added);
+        if (added) {
+            axiom.getClassesInSignature().forEach(classes::entityAdded);
+            axiom.getObjectPropertiesInSignature().forEach(objectProperties::entityAdded);
+            axiom.getDataPropertiesInSignature().forEach(dataProperties::entityAdded);
+        } else {
+            for (OWLClass cls : axiom.getClassesInSignature()) {
+                if (!ontology.containsEntityInSignature(cls, Imports.INCLUDED)) classes.entityRemoved(cls);
+            }
+            for (OWLObjectProperty property : axiom.getObjectPropertiesInSignature()) {
+                if (!ontology.containsEntityInSignature(property, Imports.INCLUDED)) objectProperties.entityRemoved(property);
+            }
+            for (OWLDataProperty property : axiom.getDataPropertiesInSignature()) {
+                if (!ontology.containsEntityInSignature(property, Imports.INCLUDED)) dataProperties.entityRemoved(property);
+            }
+        }
+    }
+
+    private void applyEdges(OWLAxiom axiom, boolean added) {
+        if (axiom instanceof OWLSubClassOfAxiom) {
+            OWLSubClassOfAxiom subClassOf = (OWLSubClassOfAxiom) axiom;
+            if (!subClassOf.getSubClass().isAnonymous() && !subClassOf.getSuperClass().isAnonymous()) {
+                edge(classes, subClassOf.getSubClass().asOWLClass(), subClassOf.getSuperClass().asOWLClass(), added);
+            }
+        } else if (axiom instanceof OWLEquivalentClassesAxiom) {
+            equivalence(classes, ((OWLEquivalentClassesAxiom) axiom).getNamedClasses(), added);
+        } else if (axiom instanceof OWLSubObjectPropertyOfAxiom) {
+            OWLSubObjectPropertyOfAxiom subPropertyOf = (OWLSubObjectPropertyOfAxiom) axiom;
+            if (!subPropertyOf.getSubProperty().isAnonymous() && !subPropertyOf.getSuperProperty().isAnonymous()) {
+                edge(objectProperties, subPropertyOf.getSubProperty(), subPropertyOf.getSuperProperty(), added);
+            }
+        } else if (axiom instanceof OWLEquivalentObjectPropertiesAxiom) {
+            Set<OWLObjectPropertyExpression> named = new HashSet<>();
+            for (OWLObjectPropertyExpression property : ((OWLEquivalentObjectPropertiesAxiom) axiom).getProperties()) {
+                if (!property.isAnonymous()) named.add(property);
+            }
+            equivalence(objectProperties, named, added);
+        } else if (axiom instanceof OWLSubDataPropertyOfAxiom) {
+            OWLSubDataPropertyOfAxiom subPropertyOf = (OWLSubDataPropertyOfAxiom) axiom;
+            edge(dataProperties, subPropertyOf.getSubProperty().asOWLDataProperty(), subPropertyOf.getSuperProperty().asOWLDataProperty(), added);
+        } else if (axiom instanceof OWLEquivalentDataPropertiesAxiom) {
+            Set<OWLDataProperty> named = new HashSet<>();
+            for (OWLDataPropertyExpression property : ((OWLEquivalentDataPropertiesAxiom) axiom).getProperties()) {
+                named.add(property.asOWLDataProperty());
+            }
+            equivalence(dataProperties, named, added);
+        }
+    }
+
+    private static <E extends OWLObject> void edge(HierarchyIndex<E> index, E sub, E sup, boolean added) {
+        if (added) index.addEdge(sub, sup);
+        else index.removeEdge(sub, sup);
+    }
+
+    private static <E extends OWLObject> void equivalence(HierarchyIndex<E> index, Set<? extends E> entities, boolean added) {
+        for (E a : entities) {
+            for (E b : entities) {
+                if (!a.equals(b)) edge(index, a, b, added);
+            }
+        }
+    }
+
+}
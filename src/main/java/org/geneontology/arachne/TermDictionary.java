@@ -0,0 +1,45 @@
+package org.geneontology.arachne;
+
+import org.geneontology.rules.engine.ConcreteNode;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Interns RDF terms to dense, non-negative int IDs. The dictionary keeps the term instances
+ * it is given, so terms coming from a working memory are shared rather than copied.
+ */
+final class TermDictionary implements TermIndex {
+
+    private final Map<ConcreteNode, Integer> ids = new HashMap<>();
+    private final List<ConcreteNode> terms = new ArrayList<>();
+
+    int encode(ConcreteNode term) {
+        Integer id = ids.get(term);
+        if (id == null) {
+            id = terms.size();
+            ids.put(term, id);
+            terms.add(term);
+        }
+        return id;
+    }
+
+    @Override
+    public int lookup(ConcreteNode term) {
+        Integer id = ids.get(term);
+        return id != null ? id : ABSENT;
+    }
+
+    @Override
+    public ConcreteNode decode(int id) {
+        return terms.get(id);
+    }
+
+    @Override
+    public int size() {
+        return terms.size();
+    }
+
+}
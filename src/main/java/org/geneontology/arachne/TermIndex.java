@@ -0,0 +1,21 @@
+package org.geneontology.arachne;
+
+import org.geneontology.rules.engine.ConcreteNode;
+
+/**
+ * Read access to a mapping between RDF terms and dense, non-negative int IDs.
+ */
+interface TermIndex {
+
+    int ABSENT = -1;
+
+    /**
+     * @return the ID of the term, or {@link #ABSENT} if the term is not in the index
+     */
+    int lookup(ConcreteNode term);
+
+    ConcreteNode decode(int id);
+
+    int size();
+
+}
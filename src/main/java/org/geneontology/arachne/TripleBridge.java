@@ -0,0 +1,87 @@
+package org.geneontology.arachne;
+
+import org.geneontology.rules.engine.BlankNode;
+import org.geneontology.rules.engine.Resource;
+import org.geneontology.rules.engine.Triple;
+import org.geneontology.rules.engine.URI;
+import org.semanticweb.owlapi.model.*;
+import org.semanticweb.owlapi.vocab.OWLRDFVocabulary;
+
+import java.util.Collection;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.StreamSupport;
+
+/**
+ * Converts class and object property assertions to Arachne triples, with one {@link URI} per IRI. Terms are
+ * interned in a table which may be seeded with the constants of the rule engine, so that asserted triples
+ * share their predicates and classes with the engine's patterns, and converting an axiom whose terms have
+ * been seen before allocates only its triple.
+ * <p>
+ * Terms are never evicted: the table holds every IRI converted, i.e. the Abox signature and any queried individuals.
+ * Safe for use from several threads.
+ */
+public final class TripleBridge {
+
+    private static final URI RDF_TYPE = new URI(OWLRDFVocabulary.RDF_TYPE.getIRI().toString());
+
+    private final ConcurrentMap<IRI, URI> terms = new ConcurrentHashMap<>();
+
+    public TripleBridge() {
+        terms.put(OWLRDFVocabulary.RDF_TYPE.getIRI(), RDF_TYPE);
+    }
+
+    /**
+     * Makes the given terms, e.g. the constants of a rule engine, the interned instances of their IRIs.
+     * Terms interned earlier stay valid, as URIs are compared by value.
+     */
+    void intern(Collection<URI> constants) {
+        for (URI constant : constants) {
+            terms.put(IRI.create(constant.uri()), constant);
+        }
+    }
+
+    /**
+     * @return the interned URI of the IRI
+     */
+    public URI uri(IRI iri) {
+        URI uri = terms.get(iri);
+        return uri != null ? uri : terms.computeIfAbsent(iri, i -> new URI(i.toString()));
+    }
+
+    /**
+     * @return the triple of an object property assertion or of a class assertion of a named class,
+     * or null for any other axiom
+     */
+    public Triple triple(OWLAxiom axiom) {
+        if (axiom instanceof OWLObjectPropertyAssertionAxiom) {
+            OWLObjectPropertyAssertionAxiom assertion = (OWLObjectPropertyAssertionAxiom) axiom;
+            OWLObjectPropertyExpression property = assertion.getProperty();
+            if (property.isAnonymous()) {
+                return new Triple(resource(assertion.getObject()), uri(property.getInverseProperty().asOWLObjectProperty().getIRI()),
+                        resource(assertion.getSubject()));
+            } else {
+                return new Triple(resource(assertion.getSubject()), uri(property.asOWLObjectProperty().getIRI()),
+                        resource(assertion.getObject()));
+            }
+        } else if (axiom instanceof OWLClassAssertionAxiom) {
+            OWLClassAssertionAxiom assertion = (OWLClassAssertionAxiom) axiom;
+            if (assertion.getClassExpression().isAnonymous()) return null;
+            return new Triple(resource(assertion.getIndividual()), RDF_TYPE, uri(assertion.getClassExpression().asOWLClass().getIRI()));
+        } else return null;
+    }
+
+    /**
+     * @return the triples of the axioms, converted as they are iterated, skipping axioms without one
+     */
+    public Iterable<Triple> triples(Iterable<? extends OWLAxiom> axioms) {
+        return () -> StreamSupport.stream(axioms.spliterator(), false).map(this::triple).filter(Objects::nonNull).iterator();
+    }
+
+    private Resource resource(OWLIndividual individual) {
+        if (individual.isNamed()) return uri(individual.asOWLNamedIndividual().getIRI());
+        else return new BlankNode(individual.asOWLAnonymousIndividual().getID().getID());
+    }
+
+}
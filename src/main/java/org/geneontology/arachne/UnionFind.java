@@ -0,0 +1,105 @@
+package org.geneontology.arachne;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Disjoint sets over arbitrary elements, with union by size and path halving. Preferred elements win over
+ * others as the root of a union, so a set containing one is always represented by one.
+ */
+final class UnionFind<T> {
+
+    private final Predicate<? super T> preferred;
+    private final Map<T, Integer> index = new HashMap<>();
+    private final List<T> elements = new ArrayList<>();
+    private int[] parent = new int[16];
+    private int[] size = new int[16];
+
+    UnionFind() {
+        this(element -> false);
+    }
+
+    UnionFind(Predicate<? super T> preferred) {
+        this.preferred = preferred;
+    }
+
+    /**
+     * @return the dense index of the element, adding it as a singleton set if new
+     */
+    int add(T element) {
+        Integer i = index.get(element);
+        if (i == null) {
+            i = index.size();
+            if (i == parent.length) {
+                parent = Arrays.copyOf(parent, i * 2);
+                size = Arrays.copyOf(size, i * 2);
+            }
+            parent[i] = i;
+            size[i] = 1;
+            index.put(element, i);
+            elements.add(element);
+        }
+        return i;
+    }
+
+    boolean contains(T element) {
+        return index.containsKey(element);
+    }
+
+    /**
+     * @return the index of the root of the element's set, adding the element if new
+     */
+    int find(T element) {
+        return root(add(element));
+    }
+
+    /**
+     * @return the element at the root of the element's set, adding the element if new
+     */
+    T representative(T element) {
+        return elements.get(find(element));
+    }
+
+    /**
+     * @return all elements, in the order they were added
+     */
+    List<T> elements() {
+        return elements;
+    }
+
+    private int root(int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    /**
+     * @return true if the elements were in different sets
+     */
+    boolean union(T a, T b) {
+        int ra = find(a);
+        int rb = find(b);
+        if (ra == rb) return false;
+        boolean preferA = preferred.test(elements.get(ra));
+        boolean preferB = preferred.test(elements.get(rb));
+        if (preferA != preferB ? preferB : size[ra] < size[rb]) {
+            int swap = ra;
+            ra = rb;
+            rb = swap;
+        }
+        parent[rb] = ra;
+        size[ra] += size[rb];
+        return true;
+    }
+
+    int size() {
+        return index.size();
+    }
+
+}
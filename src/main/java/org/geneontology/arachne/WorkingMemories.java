@@ -0,0 +1,99 @@
+package org.geneontology.arachne;
+
+import org.geneontology.rules.engine.*;
+import scala.Option;
+import scala.Tuple2;
+import scala.collection.JavaConverters;
+import scala.collection.immutable.Queue;
+
+import java.util.Collections;
+
+/**
+ * Realizes triples into an existing working memory. {@link RuleEngine#processTriples} only realizes into a new
+ * working memory, but the engine exposes the steps it takes: {@link RuleEngine#processTriple} adds a new fact to
+ * the agenda, and each fact taken from the agenda activates the alpha nodes of the patterns it matches, whose
+ * rules add derived facts to the agenda in turn.
+ */
+final class WorkingMemories {
+
+    private static final AnyNode$ ANY = AnyNode$.MODULE$;
+
+    /**
+     * Facts taken from the agenda between checks of the guard
+     */
+    private static final int CHECK_INTERVAL = 1000;
+
+    private WorkingMemories() {
+    }
+
+    /**
+     * @return a working memory without facts, linked to the engine's network
+     */
+    static WorkingMemory empty(RuleEngine engine) {
+        return engine.processTriples(JavaConverters.asScalaSet(Collections.<Triple>emptySet()));
+    }
+
+    /**
+     * Adds the triples to the memory one at a time, running the rules to a fixpoint after each, so that
+     * a triple is only taken from the iterable once the facts of the previous ones are complete.
+     * Triples already in the memory are skipped. The asserted triples of the memory are not changed.
+     *
+     * @return the memory
+     */
+    static WorkingMemory add(RuleEngine engine, Iterable<Triple> triples, WorkingMemory memory) {
+        return add(engine, triples, memory, null);
+    }
+
+    /**
+     * Adds the triples as {@link #add(RuleEngine, Iterable, WorkingMemory)} does, counting the facts taken from the
+     * agenda against the guard and checking it every {@value #CHECK_INTERVAL} facts, so that a single triple whose
+     * consequences exceed the budget or outlast the timeout is stopped before they are complete. Each fact is
+     * checked for a clash as it is taken.
+     *
+     * @param guard guard of the realization, or null
+     */
+    static WorkingMemory add(RuleEngine engine, Iterable<Triple> triples, WorkingMemory memory, RealizationGuard guard) {
+        for (Triple triple : triples) {
+            engine.processTriple(triple, memory);
+            int unchecked = 0;
+            while (memory.agenda().nonEmpty()) {
+                Tuple2<Triple, Queue<Triple>> next = memory.agenda().dequeue();
+                memory.agenda_$eq(next._2());
+                if (guard != null) {
+                    guard.checkClash(next._1(), memory);
+                    if (++unchecked == CHECK_INTERVAL) {
+                        guard.check();
+                        guard.countFacts(unchecked);
+                        unchecked = 0;
+                    }
+                }
+                activate(engine, next._1(), memory);
+            }
+            if (guard != null) guard.countFacts(unchecked);
+        }
+        return memory;
+    }
+
+    /**
+     * Hands the fact to the alpha nodes of every pattern it matches, in the order the engine uses.
+     */
+    private static void activate(RuleEngine engine, Triple fact, WorkingMemory memory) {
+        Resource s = fact.s();
+        URI p = fact.p();
+        ConcreteNode o = fact.o();
+        activate(engine, new TriplePattern(ANY, ANY, ANY), fact, memory);
+        activate(engine, new TriplePattern(ANY, ANY, o), fact, memory);
+        activate(engine, new TriplePattern(ANY, p, ANY), fact, memory);
+        activate(engine, new TriplePattern(ANY, p, o), fact, memory);
+        activate(engine, new TriplePattern(s, ANY, ANY), fact, memory);
+        activate(engine, new TriplePattern(s, ANY, o), fact, memory);
+        activate(engine, new TriplePattern(s, p, ANY), fact, memory);
+        activate(engine, new TriplePattern(s, p, o), fact, memory);
+    }
+
+    private static void activate(RuleEngine engine, TriplePattern pattern, Triple fact, WorkingMemory memory) {
+        Option<AlphaNode> node = engine.alphaIndex().get(pattern);
+        if (node.isDefined()) node.get().activate(fact, memory);
+    }
+
+}
@@ -0,0 +1,109 @@
+package org.geneontology.arachne;
+
+import org.apache.jena.system.JenaSystem;
+import org.geneontology.rules.engine.Rule;
+import org.geneontology.rules.engine.Triple;
+import org.geneontology.rules.engine.URI;
+import org.geneontology.rules.util.Bridge;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.semanticweb.owlapi.reasoner.NullReasonerProgressMonitor;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AboxRealizerTest {
+
+    private static final String NS = "http://example.org/";
+    private static final URI RDF_TYPE = new URI("http://www.w3.org/1999/02/22-rdf-syntax-ns#type");
+
+    @BeforeClass
+    public static void initJena() {
+        JenaSystem.init();
+    }
+
+    @Test
+    public void realizesFactsJoinedThroughRuleConstant() {
+        CompiledRules rules = new CompiledRules(hasValueRules());
+        Set<Triple> triples = hasValueAbox(true, true);
+        for (ConstantLinks links : Arrays.asList(null, rules.links())) {
+            AboxRealizer realizer = realizer(rules, links);
+            realizer.realizeAll(triples, guard(), progress());
+            assertTrue(facts(realizer).contains(type("x", "D")));
+        }
+    }
+
+    @Test
+    public void updateMatchesFullRealizationThroughRuleConstant() {
+        CompiledRules rules = new CompiledRules(hasValueRules());
+        AboxRealizer full = realizer(rules, rules.links());
+        full.realizeAll(hasValueAbox(true, true), guard(), progress());
+        AboxRealizer incremental = realizer(rules, rules.links());
+        incremental.realizeAll(hasValueAbox(false, true), guard(), progress());
+        incremental.update(hasValueAbox(true, false), Collections.emptySet(), guard(), progress());
+        assertTrue(facts(incremental).contains(type("x", "D")));
+        assertEquals(facts(full), facts(incremental));
+    }
+
+    /**
+     * @return rules for C SubClassOf p value a, and D EquivalentTo p some E; the first links instances of C to the constant a
+     */
+    private static List<Rule> hasValueRules() {
+        return rules("[(?x rdf:type <" + NS + "C>) -> (?x <" + NS + "p> <" + NS + "a>)]",
+                "[(?x <" + NS + "p> ?y) (?y rdf:type <" + NS + "E>) -> (?x rdf:type <" + NS + "D>)]");
+    }
+
+    /**
+     * @return x of type C and a of type E, each linked to enough other individuals to fill a bin of its own
+     */
+    private static Set<Triple> hasValueAbox(boolean x, boolean a) {
+        Set<Triple> triples = new HashSet<>();
+        if (x) triples.add(type("x", "C"));
+        if (a) triples.add(type("a", "E"));
+        for (int i = 0; i < 1500; i++) {
+            if (x) triples.add(new Triple(uri("x"), uri("q"), uri("y" + i)));
+            if (a) triples.add(new Triple(uri("a"), uri("q"), uri("z" + i)));
+        }
+        return triples;
+    }
+
+    static List<Rule> rules(String... rules) {
+        List<Rule> parsed = new ArrayList<>();
+        for (String rule : rules) {
+            parsed.add(Bridge.ruleFromJena(org.apache.jena.reasoner.rulesys.Rule.parseRule(rule)).get());
+        }
+        return parsed;
+    }
+
+    static AboxRealizer realizer(CompiledRules rules, ConstantLinks links) {
+        return new AboxRealizer(rules.engine, null, rules.derivesSameAs, rules.constants, links);
+    }
+
+    static RealizationGuard guard() {
+        return new RealizationGuard(new AtomicBoolean(false), Long.MAX_VALUE, Long.MAX_VALUE);
+    }
+
+    static TaskProgress progress() {
+        return new TaskProgress(new NullReasonerProgressMonitor());
+    }
+
+    static Set<Triple> facts(AboxRealizer realizer) {
+        Set<Triple> facts = new HashSet<>();
+        for (Triple fact : realizer.facts()) {
+            facts.add(fact);
+        }
+        return facts;
+    }
+
+    static URI uri(String name) {
+        return new URI(NS + name);
+    }
+
+    static Triple type(String individual, String type) {
+        return new Triple(uri(individual), RDF_TYPE, uri(type));
+    }
+
+}
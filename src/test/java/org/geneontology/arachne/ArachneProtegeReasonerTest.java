@@ -0,0 +1,87 @@
+package org.geneontology.arachne;
+
+import org.apache.jena.system.JenaSystem;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.*;
+import org.semanticweb.owlapi.reasoner.BufferingMode;
+import org.semanticweb.owlapi.reasoner.InferenceType;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ArachneProtegeReasonerTest {
+
+    private static final String NS = "http://example.org/";
+
+    private final OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+    private final OWLDataFactory factory = manager.getOWLDataFactory();
+
+    @BeforeClass
+    public static void initJena() {
+        JenaSystem.init();
+    }
+
+    @Test
+    public void precomputationCoversFlushedChanges() throws OWLOntologyCreationException {
+        OWLOntology ontology = manager.createOntology();
+        manager.addAxiom(ontology, factory.getOWLSubClassOfAxiom(cls("A"), cls("B")));
+        manager.addAxiom(ontology, factory.getOWLClassAssertionAxiom(cls("A"), individual("i")));
+        ArachneProtegeReasoner reasoner = new ArachneProtegeReasoner(ontology, BufferingMode.BUFFERING, new ArachneReasonerConfiguration());
+        try {
+            reasoner.precomputeInferences(InferenceType.CLASS_ASSERTIONS);
+            assertTrue(reasoner.isPrecomputed(InferenceType.CLASS_ASSERTIONS));
+            manager.addAxiom(ontology, factory.getOWLClassAssertionAxiom(cls("A"), individual("j")));
+            reasoner.flush();
+            assertFalse(reasoner.isPrecomputed(InferenceType.CLASS_ASSERTIONS));
+            assertTrue(reasoner.getTypes(individual("j"), false).containsEntity(cls("B")));
+            reasoner.precomputeInferences(InferenceType.CLASS_ASSERTIONS);
+            assertTrue(reasoner.isPrecomputed(InferenceType.CLASS_ASSERTIONS));
+            assertTrue(reasoner.getTypes(individual("j"), false).containsEntity(cls("B")));
+            assertTrue(reasoner.getInstances(cls("B"), false).containsEntity(individual("i")));
+        } finally {
+            reasoner.dispose();
+        }
+    }
+
+    @Test
+    public void sharedEngineSkipsTranslationAndKeepsEditsSeparate() throws OWLOntologyCreationException {
+        EngineCache engines = new EngineCache();
+        OWLOntology first = manager.createOntology();
+        OWLOntology second = manager.createOntology();
+        for (OWLOntology ontology : new OWLOntology[]{first, second}) {
+            manager.addAxiom(ontology, factory.getOWLSubClassOfAxiom(cls("A"), cls("B")));
+            manager.addAxiom(ontology, factory.getOWLClassAssertionAxiom(cls("A"), individual("i")));
+        }
+        ReasonerMetrics firstMetrics = new ReasonerMetrics();
+        ReasonerMetrics secondMetrics = new ReasonerMetrics();
+        ArachneProtegeReasoner translating = new ArachneProtegeReasoner(first, BufferingMode.BUFFERING, new ArachneReasonerConfiguration(), firstMetrics, engines);
+        ArachneProtegeReasoner sharing = new ArachneProtegeReasoner(second, BufferingMode.BUFFERING, new ArachneReasonerConfiguration(), secondMetrics, engines);
+        try {
+            assertEquals(Long.valueOf(1), firstMetrics.getPhaseCounts().get(ReasonerMetrics.RULE_TRANSLATION));
+            assertNull(secondMetrics.getPhaseCounts().get(ReasonerMetrics.RULE_TRANSLATION));
+            assertTrue(sharing.getTypes(individual("i"), false).containsEntity(cls("B")));
+            manager.addAxiom(second, factory.getOWLSubClassOfAxiom(cls("B"), cls("C")));
+            sharing.flush();
+            assertEquals(Long.valueOf(1), secondMetrics.getPhaseCounts().get(ReasonerMetrics.RULE_TRANSLATION));
+            assertTrue(sharing.getTypes(individual("i"), false).containsEntity(cls("B")));
+            assertTrue(sharing.getTypes(individual("i"), false).containsEntity(cls("C")));
+            assertFalse(translating.getTypes(individual("i"), false).containsEntity(cls("C")));
+        } finally {
+            translating.dispose();
+            sharing.dispose();
+        }
+    }
+
+    private OWLClass cls(String name) {
+        return factory.getOWLClass(IRI.create(NS + name));
+    }
+
+    private OWLNamedIndividual individual(String name) {
+        return factory.getOWLNamedIndividual(IRI.create(NS + name));
+    }
+
+}
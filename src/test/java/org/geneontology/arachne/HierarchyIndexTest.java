@@ -0,0 +1,126 @@
+package org.geneontology.arachne;
+
+import org.junit.Test;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.reasoner.impl.NodeFactory;
+import org.semanticweb.owlapi.reasoner.impl.OWLClassNodeSet;
+
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HierarchyIndexTest {
+
+    private static final String NS = "http://example.org/";
+
+    private final OWLDataFactory factory = OWLManager.getOWLDataFactory();
+
+    @Test
+    public void updatesMatchRebuiltHierarchy() {
+        Random random = new Random(42);
+        List<OWLClass> classes = new ArrayList<>();
+        classes.add(factory.getOWLThing());
+        for (int i = 0; i < 30; i++) {
+            classes.add(cls("C" + i));
+        }
+        classes.add(factory.getOWLNothing());
+        Set<OWLClass> signature = new HashSet<>();
+        Map<List<OWLClass>, Integer> edges = new HashMap<>();
+        HierarchyIndex<OWLClass> incremental = index(signature);
+        for (int step = 0; step < 3000; step++) {
+            int i = random.nextInt(classes.size());
+            int j = random.nextInt(classes.size());
+            // Mostly edges down the list, which merge no nodes; the others form cycles or reach the bottom entity
+            if (i < j && random.nextInt(8) > 0) {
+                int swap = i;
+                i = j;
+                j = swap;
+            }
+            OWLClass sub = classes.get(i);
+            OWLClass sup = classes.get(j);
+            List<OWLClass> edge = Arrays.asList(sub, sup);
+            int action = random.nextInt(5);
+            if (action < 2 && !sub.equals(sup)) {
+                edges.merge(edge, 1, Integer::sum);
+                incremental.addEdge(sub, sup);
+                added(signature, incremental, sub);
+                added(signature, incremental, sup);
+            } else if (action < 4 && !edges.isEmpty()) {
+                List<List<OWLClass>> told = new ArrayList<>(edges.keySet());
+                edge = told.get(random.nextInt(told.size()));
+                if (edges.merge(edge, -1, Integer::sum) == 0) edges.remove(edge);
+                incremental.removeEdge(edge.get(0), edge.get(1));
+            } else if (action == 4 && !sub.isOWLThing() && !sub.isOWLNothing()) {
+                if (signature.contains(sub) && edges.keySet().stream().noneMatch(e -> e.contains(sub))) {
+                    signature.remove(sub);
+                    incremental.entityRemoved(sub);
+                } else {
+                    added(signature, incremental, sub);
+                }
+            }
+            // Keeps the nodes built and held by a view, so each update is applied to a copy
+            incremental.view();
+            if (step % 5 == 0) assertSameHierarchy(rebuilt(signature, edges), incremental, classes);
+        }
+    }
+
+    @Test
+    public void viewKeepsHierarchyAsTaken() {
+        Set<OWLClass> signature = new HashSet<>(Arrays.asList(cls("A"), cls("B"), cls("C")));
+        HierarchyIndex<OWLClass> index = index(signature);
+        index.addEdge(cls("A"), cls("B"));
+        HierarchyIndex.View<OWLClass> before = index.view();
+        index.addEdge(cls("B"), cls("C"));
+        HierarchyIndex.View<OWLClass> after = index.view();
+        assertFalse(before.subsumesAny(cls("C"), Collections.singleton(cls("A"))));
+        assertTrue(after.subsumesAny(cls("C"), Collections.singleton(cls("A"))));
+        index.removeEdge(cls("A"), cls("B"));
+        assertTrue(before.subsumesAny(cls("B"), Collections.singleton(cls("A"))));
+        assertTrue(after.subsumesAny(cls("C"), Collections.singleton(cls("A"))));
+        assertFalse(index.view().subsumesAny(cls("C"), Collections.singleton(cls("A"))));
+    }
+
+    private void added(Set<OWLClass> signature, HierarchyIndex<OWLClass> index, OWLClass cls) {
+        if (cls.isOWLThing() || cls.isOWLNothing()) return;
+        signature.add(cls);
+        index.entityAdded(cls);
+    }
+
+    private HierarchyIndex<OWLClass> rebuilt(Set<OWLClass> signature, Map<List<OWLClass>, Integer> edges) {
+        HierarchyIndex<OWLClass> index = index(signature);
+        for (Map.Entry<List<OWLClass>, Integer> edge : edges.entrySet()) {
+            for (int i = 0; i < edge.getValue(); i++) {
+                index.addEdge(edge.getKey().get(0), edge.getKey().get(1));
+            }
+        }
+        return index;
+    }
+
+    private void assertSameHierarchy(HierarchyIndex<OWLClass> expected, HierarchyIndex<OWLClass> actual, List<OWLClass> classes) {
+        assertEquals(expected.topNode(), actual.topNode());
+        assertEquals(expected.bottomNode(), actual.bottomNode());
+        for (OWLClass cls : classes) {
+            assertEquals(expected.equivalents(cls), actual.equivalents(cls));
+            for (boolean direct : new boolean[]{true, false}) {
+                assertEquals(expected.supers(cls, direct).getNodes(), actual.supers(cls, direct).getNodes());
+                assertEquals(expected.subs(cls, direct).getNodes(), actual.subs(cls, direct).getNodes());
+            }
+            assertEquals(expected.view().subsumesAny(cls, classes), actual.view().subsumesAny(cls, classes));
+        }
+    }
+
+    private HierarchyIndex<OWLClass> index(Set<OWLClass> signature) {
+        return new HierarchyIndex<>(factory.getOWLThing(), factory.getOWLNothing(), () -> new HashSet<>(signature),
+                NodeFactory::getOWLClassNode, OWLClassNodeSet::new);
+    }
+
+    private OWLClass cls(String name) {
+        return factory.getOWLClass(IRI.create(NS + name));
+    }
+
+}
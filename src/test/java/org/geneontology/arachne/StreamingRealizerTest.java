@@ -0,0 +1,62 @@
+package org.geneontology.arachne;
+
+import org.apache.jena.system.JenaSystem;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StreamingRealizerTest {
+
+    private static final String NS = "http://example.org/";
+    private static final String RDF_TYPE = "<http://www.w3.org/1999/02/22-rdf-syntax-ns#type>";
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void initJena() {
+        JenaSystem.init();
+    }
+
+    @Test
+    public void realizesAcrossBatchesInOneMemory() throws Exception {
+        OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+        OWLDataFactory factory = manager.getOWLDataFactory();
+        OWLOntology tbox = manager.createOntology();
+        OWLObjectProperty p = factory.getOWLObjectProperty(IRI.create(NS + "p"));
+        manager.addAxiom(tbox, factory.getOWLSubClassOfAxiom(
+                factory.getOWLObjectSomeValuesFrom(p, factory.getOWLClass(IRI.create(NS + "C"))), factory.getOWLClass(IRI.create(NS + "D"))));
+        // The two triples joined by the rule are read more than a batch apart
+        File abox = folder.newFile("abox.nt");
+        try (PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(abox), StandardCharsets.UTF_8))) {
+            out.println("<" + NS + "x> <" + NS + "p> <" + NS + "y> .");
+            for (int i = 0; i < 25_000; i++) {
+                out.println("<" + NS + "z" + i + "> <" + NS + "q> <" + NS + "w" + i + "> .");
+            }
+            out.println("<" + NS + "y> " + RDF_TYPE + " <" + NS + "C> .");
+        }
+        StreamingRealizer realizer = new StreamingRealizer(tbox);
+        StreamingRealizer.Realization realization = realizer.realize(abox.getPath(), true);
+        assertEquals(25_002, realization.triples);
+        assertTrue(realization.memory.asserted().isEmpty());
+        File inferred = folder.newFile("inferred.nt");
+        try (OutputStream out = new FileOutputStream(inferred)) {
+            StreamingRealizer.write(realization, out, true);
+        }
+        List<String> lines = Files.readAllLines(inferred.toPath(), StandardCharsets.UTF_8);
+        assertTrue(lines.contains("<" + NS + "x> " + RDF_TYPE + " <" + NS + "D> ."));
+        assertTrue(lines.stream().noneMatch(line -> line.contains("<" + NS + "q>")));
+    }
+
+}
@@ -0,0 +1,70 @@
+package org.geneontology.arachne;
+
+import org.apache.jena.system.JenaSystem;
+import org.geneontology.rules.engine.Rule;
+import org.geneontology.rules.engine.WorkingMemory;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.semanticweb.owlapi.reasoner.InconsistentOntologyException;
+import org.semanticweb.owlapi.reasoner.ReasonerInterruptedException;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.geneontology.arachne.AboxRealizerTest.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class WorkingMemoriesTest {
+
+    private static final int CHAIN = 1500;
+
+    @BeforeClass
+    public static void initJena() {
+        JenaSystem.init();
+    }
+
+    @Test
+    public void stopsCascadeOfOneTripleAtFactBudget() {
+        CompiledRules rules = new CompiledRules(chainRules());
+        WorkingMemory memory = WorkingMemories.empty(rules.engine);
+        RealizationGuard guard = new RealizationGuard(new AtomicBoolean(false), Long.MAX_VALUE, 100);
+        try {
+            WorkingMemories.add(rules.engine, Collections.singleton(type("x", "C0")), memory, guard);
+            fail("The fact budget was not enforced");
+        } catch (ReasonerInterruptedException e) {
+            assertTrue(memory.facts().size() < CHAIN);
+        }
+    }
+
+    @Test
+    public void stopsCascadeAtFirstClash() {
+        List<Rule> chain = chainRules();
+        chain.addAll(rules("[(?x rdf:type <" + uri("C0").uri() + ">) -> (?x rdf:type <http://www.w3.org/2002/07/owl#Nothing>)]"));
+        CompiledRules rules = new CompiledRules(chain);
+        WorkingMemory memory = WorkingMemories.empty(rules.engine);
+        RealizationGuard guard = new RealizationGuard(new AtomicBoolean(false), Long.MAX_VALUE, Long.MAX_VALUE, true);
+        try {
+            WorkingMemories.add(rules.engine, Collections.singleton(type("x", "C0")), memory, guard);
+            fail("The clash was not reported");
+        } catch (InconsistentOntologyException e) {
+            assertTrue(memory.facts().size() < CHAIN);
+            assertEquals(Collections.singleton(uri("x")), guard.clashes());
+        }
+    }
+
+    /**
+     * @return rules for a chain of subclasses C0 SubClassOf C1 ... SubClassOf C{@value #CHAIN}, so that a single
+     * type assertion derives a type for each
+     */
+    static List<Rule> chainRules() {
+        String[] chain = new String[CHAIN];
+        for (int i = 0; i < CHAIN; i++) {
+            chain[i] = "[(?x rdf:type <" + uri("C" + i).uri() + ">) -> (?x rdf:type <" + uri("C" + (i + 1)).uri() + ">)]";
+        }
+        return rules(chain);
+    }
+
+}